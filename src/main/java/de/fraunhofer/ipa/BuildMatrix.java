@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+/**
+ * The ROS releases and the Ubuntu release/architecture combinations selected
+ * for a {@link RootRepository}. The names are interned into indexes shared by
+ * all repositories, so each selection is kept as two bit sets instead of lists
+ * and maps of strings.
+ */
+public final class BuildMatrix {
+
+	private static final Dimension ROS_DISTROS = new Dimension();
+
+	/**
+	 * Ubuntu release/architecture combinations
+	 */
+	private static final Dimension CELLS = new Dimension();
+
+	private final BitSet rosDistros = new BitSet();
+
+	private final BitSet cells = new BitSet();
+
+	public BuildMatrix() {
+	}
+
+	/**
+	 * Creates a matrix from the former list and map representation
+	 */
+	public BuildMatrix(List<String> rosDistros, Map<String, List<String>> matrixDistroArch) {
+		if (rosDistros != null) {
+			for (String rosDistro : rosDistros) {
+				addRosDistro(rosDistro);
+			}
+		}
+		if (matrixDistroArch != null) {
+			for (Map.Entry<String, List<String>> entry : matrixDistroArch.entrySet()) {
+				for (String arch : entry.getValue()) {
+					addEntry(entry.getKey(), arch);
+				}
+			}
+		}
+	}
+
+	void addRosDistro(String rosDistro) {
+		rosDistros.set(ROS_DISTROS.index(rosDistro));
+	}
+
+	void addEntry(String ubuntu, String arch) {
+		cells.set(CELLS.index(cell(ubuntu, arch)));
+	}
+
+	public boolean isRosDistroChecked(String rosDistro) {
+		int i = ROS_DISTROS.find(rosDistro);
+		return i >= 0 && rosDistros.get(i);
+	}
+
+	public boolean isEntryChecked(String ubuntu, String arch) {
+		int i = CELLS.find(cell(ubuntu, arch));
+		return i >= 0 && cells.get(i);
+	}
+
+	/**
+	 * @return the selected ROS releases in alphabetical order
+	 */
+	public List<String> getRosDistros() {
+		return getRosDistros(Collections.<String>emptyList());
+	}
+
+	/**
+	 * The bits are in the order the names were first seen since startup, so
+	 * the names are sorted to give the same result after every restart.
+	 * @param order ROS releases in the order they should be returned in,
+	 * others follow in alphabetical order
+	 * @return the selected ROS releases
+	 */
+	public List<String> getRosDistros(List<String> order) {
+		List<String> result = new ArrayList<String>(rosDistros.cardinality());
+		for (int i = rosDistros.nextSetBit(0); i >= 0; i = rosDistros.nextSetBit(i + 1)) {
+			result.add(ROS_DISTROS.name(i));
+		}
+		Collections.sort(result, orderedBy(order));
+		return result;
+	}
+
+	/**
+	 * @return the selected architectures by Ubuntu release, the
+	 * <tt>regular_matrix</tt> of the pipeline configuration, both in
+	 * alphabetical order (amd64 before i386)
+	 */
+	public Map<String, List<String>> getEntries() {
+		Map<String, List<String>> result = new TreeMap<String, List<String>>();
+		for (String[] cell : getCells()) {
+			List<String> archs = result.get(cell[0]);
+			if (archs == null) {
+				archs = new ArrayList<String>(2);
+				result.put(cell[0], archs);
+			}
+			archs.add(cell[1]);
+		}
+		return new LinkedHashMap<String, List<String>>(result);
+	}
+
+	/**
+	 * @return the selected Ubuntu release/architecture pairs in alphabetical order
+	 */
+	private List<String[]> getCells() {
+		List<String[]> result = new ArrayList<String[]>(cells.cardinality());
+		for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+			result.add(CELLS.parts(i));
+		}
+		Collections.sort(result, new Comparator<String[]>() {
+			public int compare(String[] a, String[] b) {
+				int c = a[0].compareTo(b[0]);
+				return c != 0 ? c : a[1].compareTo(b[1]);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Orders names by their position in the given list, names not in the list last and alphabetically
+	 */
+	private static Comparator<String> orderedBy(final List<String> order) {
+		return new Comparator<String>() {
+			public int compare(String a, String b) {
+				int i = order.indexOf(a);
+				int j = order.indexOf(b);
+				if (i < 0 && j < 0) {
+					return a.compareTo(b);
+				}
+				if (i < 0 || j < 0) {
+					return i < 0 ? 1 : -1;
+				}
+				return i - j;
+			}
+		};
+	}
+
+	private static String cell(String ubuntu, String arch) {
+		return ubuntu + ':' + arch;
+	}
+
+	/**
+	 * Append-only table of the names used along one dimension of the matrix
+	 */
+	private static final class Dimension {
+		private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+		private final List<String[]> names = new ArrayList<String[]>();
+
+		synchronized int index(String name) {
+			Integer i = indexes.get(name);
+			if (i == null) {
+				i = names.size();
+				String[] parts = name.split(":", 2);
+				for (int n = 0; n < parts.length; n++) {
+					parts[n] = parts[n].intern();
+				}
+				names.add(parts);
+				indexes.put(name.intern(), i);
+			}
+			return i;
+		}
+
+		synchronized int find(String name) {
+			Integer i = indexes.get(name);
+			return i == null ? -1 : i;
+		}
+
+		synchronized String name(int i) {
+			return StringUtils.join(names.get(i), ':');
+		}
+
+		synchronized String[] parts(int i) {
+			return names.get(i);
+		}
+	}
+
+	/**
+	 * {@link Converter} implementation for XStream, writes the selection as
+	 * <tt>&lt;matrix rosDistro="groovy,hydro" ubuntuArch="precise:amd64,precise:i386"/&gt;</tt>
+	 */
+	public static final class ConverterImpl implements Converter {
+		public boolean canConvert(Class type) {
+			return type == BuildMatrix.class;
+		}
+
+		public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+			BuildMatrix matrix = (BuildMatrix) source;
+			writer.addAttribute("rosDistro", StringUtils.join(matrix.getRosDistros(), ','));
+			List<String> cells = new ArrayList<String>();
+			for (String[] cell : matrix.getCells()) {
+				cells.add(cell(cell[0], cell[1]));
+			}
+			writer.addAttribute("ubuntuArch", StringUtils.join(cells, ','));
+		}
+
+		public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+			BuildMatrix matrix = new BuildMatrix();
+			for (String rosDistro : split(reader.getAttribute("rosDistro"))) {
+				matrix.addRosDistro(rosDistro);
+			}
+			for (String cell : split(reader.getAttribute("ubuntuArch"))) {
+				String[] parts = cell.split(":", 2);
+				if (parts.length == 2) {
+					matrix.addEntry(parts[0], parts[1]);
+				}
+			}
+			return matrix;
+		}
+
+		private static List<String> split(String value) {
+			if (value == null || value.length() == 0) {
+				return Collections.emptyList();
+			}
+			List<String> result = new ArrayList<String>();
+			for (String item : value.split(",")) {
+				if (item.trim().length() > 0) {
+					result.add(item.trim());
+				}
+			}
+			return result;
+		}
+	}
+}
@@ -38,15 +38,20 @@ package de.fraunhofer.ipa;
 
 import hudson.Extension;
 import hudson.Util;
+import hudson.XmlFile;
 import hudson.model.Descriptor;
 import hudson.model.Descriptor.FormException;
+import hudson.model.PeriodicWork;
 import hudson.model.RootAction;
+import hudson.model.Saveable;
 import hudson.model.User;
 import hudson.model.UserProperty;
 import hudson.model.UserPropertyDescriptor;
+import hudson.model.listeners.SaveableListener;
 //import hudson.tasks.Mailer;
 import hudson.util.FormValidation;
 import hudson.util.QuotedStringTokenizer;
+import hudson.util.Secret;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -54,20 +59,28 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Writer;
-import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
 
 import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -75,9 +88,13 @@ import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
 
+import org.apache.commons.io.FileUtils;
+
 import org.eclipse.egit.github.core.client.GitHubClient;
 import org.eclipse.egit.github.core.service.*;
-import org.eclipse.jgit.api.Git;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.storage.file.FileRepository;
 
 import org.yaml.snakeyaml.*;
@@ -105,6 +122,55 @@ public class CobPipelineProperty extends UserProperty {
 	 */
 	private volatile RootRepositoryList rootRepos = new RootRepositoryList();
 
+	/**
+	 * hash of each root repository's configuration by full name as of the last successful generation
+	 */
+	private Map<String, String> generatedHashes;
+
+	/**
+	 * digest of the pipeline configuration as of the last successful generation
+	 */
+	private String generatedDigest;
+
+	/**
+	 * revision of the jenkins_setup repository the last successful generation used
+	 */
+	private String generatedSetupRevision;
+
+	/**
+	 * ids of the latest submissions whose configuration was saved, see {@link SaveListenerImpl}
+	 */
+	private transient Set<String> savedIds;
+
+	/**
+	 * id of the submission bound last, saved with the next complete save
+	 */
+	private transient String pendingSaveId;
+
+	/**
+	 * true while the configuration form is bound, saves in between are not complete
+	 */
+	private transient boolean reconfiguring;
+
+	/**
+	 * number of saved submissions remembered for generations still waiting for them
+	 */
+	private static final int SAVED_IDS = 20;
+
+	/**
+	 * milliseconds to wait for the configuration to be saved before generating
+	 */
+	private static final long SAVE_TIMEOUT = 30000;
+
+	/**
+	 * phases of the generation reported to its {@link PipelineGenerator.Ticket}
+	 */
+	private static final String PHASE_SAVE = "saving configuration";
+	private static final String PHASE_VALIDATION = "validation";
+	private static final String PHASE_CONFIG = "pipeline configuration";
+	private static final String PHASE_CONFIG_REPO = "configuration repository";
+	private static final String PHASE_JOBS = "job generation";
+
 	@DataBoundConstructor
 	public CobPipelineProperty() {
 		this.rootRepos = rootRepos;
@@ -116,7 +182,7 @@ public class CobPipelineProperty extends UserProperty {
 	
 	public String getEmail() {
 		//TODO 'if' necessary?
-		if(!this.email.isEmpty()) {
+		if(this.email != null && !this.email.isEmpty()) {
 			return this.email;
 		}
         return "";
@@ -130,8 +196,7 @@ public class CobPipelineProperty extends UserProperty {
 		return this.committerEmailEnabled;
 	}
 
-	private String getMasterName() {
-		String url = Jenkins.getInstance().getRootUrl();
+	private static String getMasterName(String url) {
 		if (url.endsWith("/")) {
 			url = url.replace(":8080/", "");
 		} else {
@@ -179,10 +244,48 @@ public class CobPipelineProperty extends UserProperty {
 
 		private String targetsURL;
 
+		private static final String TARGETS_DIR = "cob-pipeline-targets";
+
 		private List<Map<String, List<String>>> targets;
 
+		/**
+		 * minutes between two background refreshs of the GitHub repository information
+		 */
+		private int githubRefreshInterval = 60;
+
+		/**
+		 * directory with bare mirrors of the repositories, see {@link GitMirrorMetadataProvider}
+		 */
+		private String gitMirrorDirectory;
+
+		/**
+		 * directory with the job templates of the {@link JobGenerator}, the
+		 * jobs are generated by generate_buildpipeline.py if not given
+		 */
+		private String jobTemplateDirectory;
+
+		/**
+		 * secret of the GitHub webhook, see {@link GithubWebhook}
+		 */
+		private Secret githubWebhookSecret;
+
+		/**
+		 * index of the targets, replaced as a whole whenever they change
+		 */
+		private final transient AtomicReference<TargetMatrix> targetMatrix = new AtomicReference<TargetMatrix>(TargetMatrix.EMPTY);
+
+		/**
+		 * sources of the targets by URL, in the configured order
+		 */
+		private transient Map<String, TargetSource> targetSources;
+
+		private transient ConfigRepositoryWriter configRepoWriter;
+
 		public DescriptorImpl() {
 			load();
+			// start with the last good copies, the downloads are left to the TargetsRefreshWork
+			getTargetSources();
+			publishTargets();
 		}
 
 		@Override
@@ -264,11 +367,104 @@ public class CobPipelineProperty extends UserProperty {
 			return this.pipelineReposOwner;
 		}
 
+		public void setGithubRefreshInterval(int githubRefreshInterval) {
+			this.githubRefreshInterval = githubRefreshInterval;
+		}
+
+		public int getGithubRefreshInterval() {
+			return this.githubRefreshInterval;
+		}
+
+		public void setGitMirrorDirectory(String gitMirrorDirectory) {
+			this.gitMirrorDirectory = gitMirrorDirectory;
+		}
+
+		public String getGitMirrorDirectory() {
+			return this.gitMirrorDirectory;
+		}
+
+		public void setJobTemplateDirectory(String jobTemplateDirectory) {
+			this.jobTemplateDirectory = jobTemplateDirectory;
+		}
+
+		public String getJobTemplateDirectory() {
+			return this.jobTemplateDirectory;
+		}
+
+		public void setGithubWebhookSecret(String githubWebhookSecret) {
+			this.githubWebhookSecret = Secret.fromString(githubWebhookSecret);
+		}
+
+		public Secret getGithubWebhookSecret() {
+			return this.githubWebhookSecret;
+		}
+
+		public GithubRefreshWork getGithubRefresh() {
+			return PeriodicWork.all().get(GithubRefreshWork.class);
+		}
+
+		public PipelineGenerator getGenerator() {
+			return PipelineGenerator.get();
+		}
+
+		/**
+		 * @return the current revision of the jenkins_setup repository or null if it cannot be read
+		 */
+		public String getSetupRevision() {
+			try {
+				FileRepository repo = new FileRepository(new File(getConfigFolder(), "jenkins_setup/.git"));
+				try {
+					ObjectId head = repo.resolve(Constants.HEAD);
+					return head != null ? head.name() : null;
+				} finally {
+					repo.close();
+				}
+			} catch (IOException ex) {
+				LOGGER.log(Level.FINE, "Failed to read revision of jenkins_setup", ex);
+				return null;
+			}
+		}
+
+		/**
+		 * Writes the given file into the jenkins_config repository, see {@link ConfigRepositoryWriter#write(String, byte[], String)}
+		 * @return false if it could not be pushed
+		 */
+		public boolean writeConfigRepository(String path, byte[] content, String userId) throws InterruptedException {
+			try {
+				return getConfigRepositoryWriter().write(path, content, userId);
+			} catch (RejectedExecutionException ex) {
+				// the writer was replaced after the settings changed, the new one takes the update
+				try {
+					return getConfigRepositoryWriter().write(path, content, userId);
+				} catch (RejectedExecutionException again) {
+					LOGGER.log(Level.WARNING, "Configuration repository writer not available", again);
+					return false;
+				}
+			}
+		}
+
+		/**
+		 * @return the writer of the jenkins_config repository in the configuration folder
+		 */
+		public synchronized ConfigRepositoryWriter getConfigRepositoryWriter() {
+			File folder = new File(getConfigFolder(), "jenkins_config");
+			String url = "git@github.com:" + getPipelineReposOwner() + "/jenkins_config.git";
+			if (configRepoWriter == null || !configRepoWriter.getFolder().equals(folder) || !configRepoWriter.getRemoteURL().equals(url)) {
+				if (configRepoWriter != null) {
+					configRepoWriter.shutdown();
+				}
+				configRepoWriter = new ConfigRepositoryWriter(folder, url);
+			}
+			return configRepoWriter;
+		}
+
 		public void setAllRosDistrosString(String rosDistrosString) {
 			this.allRosDistros = new ArrayList<String>(Arrays.asList(Util.tokenize(rosDistrosString)));
 		}
 
 		public String getAllRosDistrosString() {
+			if (allRosDistros == null || allRosDistros.isEmpty())
+				return "";
 			int len=0;
 			for (String rosDistro : allRosDistros)
 				len += rosDistro.length();
@@ -280,7 +476,13 @@ public class CobPipelineProperty extends UserProperty {
 			return buf.substring(1);
 		}
 
+		/**
+		 * Returns the configured ROS releases, all ROS releases of the targets if none are configured
+		 */
 		public List<String> getAllRosDistros() {
+			if (allRosDistros == null || allRosDistros.isEmpty()) {
+				return getTargetMatrix().getRosDistros();
+			}
 			return Collections.unmodifiableList(allRosDistros);
 		}
 
@@ -304,34 +506,103 @@ public class CobPipelineProperty extends UserProperty {
 			return Collections.unmodifiableList(robots);
 		}
 
-		@SuppressWarnings("unchecked")
-		public void setTargetsURL(String url) throws Exception{
-			this.targetsURL = url;
-			URL targets = new URL(url);
-			BufferedReader in = new BufferedReader(
-					new InputStreamReader(targets.openStream()));
-
-			String aux = "";
-			String yamlString = "";
-			while ((aux = in.readLine()) != null) {
-				yamlString += aux;
-				yamlString += "\n";
+		/**
+		 * Sets the URLs of the targets.yaml files, separated by whitespace.
+		 * They are fetched by the {@link TargetsRefreshWork}.
+		 */
+		public synchronized void setTargetsURL(String urls) {
+			this.targetsURL = urls;
+			// keep the sources which are still configured together with their state
+			Map<String, TargetSource> sources = new LinkedHashMap<String, TargetSource>();
+			for (String url : getTargetsURLs()) {
+				TargetSource source = this.targetSources == null ? null : this.targetSources.get(url);
+				if (source == null) {
+					source = new TargetSource(url, new File(Jenkins.getInstance().getRootDir(), TARGETS_DIR));
+					source.loadCached();
+				}
+				sources.put(url, source);
+			}
+			boolean changed = this.targetSources != null && !sources.keySet().equals(this.targetSources.keySet());
+			this.targetSources = sources;
+			if (changed) {
+				publishTargets();
 			}
-			in.close();
-
-			Yaml yaml = new Yaml();
-			this.targets = new ArrayList<Map<String, List<String>>>();
-			this.targets = (List<Map<String, List<String>>>) yaml.load(yamlString);
 		}
 
 		public String getTargetsURL() {
 			return this.targetsURL;
 		}
 
+		public List<String> getTargetsURLs() {
+			return this.targetsURL == null ? Collections.<String>emptyList() : Arrays.asList(Util.tokenize(this.targetsURL));
+		}
+
+		/**
+		 * Returns the sources of the targets in the configured order
+		 */
+		public synchronized List<TargetSource> getTargetSources() {
+			if (this.targetSources == null) {
+				setTargetsURL(this.targetsURL);
+			}
+			return new ArrayList<TargetSource>(this.targetSources.values());
+		}
+
+		/**
+		 * Fetches the targets which changed and publishes the merged targets
+		 * if any of them did. Continues with the other sources if one fails.
+		 */
+		public void refreshTargets() throws IOException {
+			boolean changed = false;
+			IOException failure = null;
+			for (TargetSource source : getTargetSources()) {
+				try {
+					changed |= source.refresh();
+				} catch (IOException ex) {
+					LOGGER.log(Level.WARNING, "Failed to fetch targets from " + source.getUrl(), ex);
+					if (failure == null) {
+						failure = ex;
+					}
+				}
+			}
+			if (changed) {
+				publishTargets();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+
+		/**
+		 * Merges the targets of all sources, ROS releases of several sources
+		 * support the Ubuntu releases of all of them
+		 */
+		private synchronized void publishTargets() {
+			List<Map<String, List<String>>> merged = new ArrayList<Map<String, List<String>>>();
+			boolean found = false;
+			for (TargetSource source : this.targetSources.values()) {
+				if (source.getTargets() != null) {
+					merged.addAll(source.getTargets());
+					found = true;
+				}
+			}
+			if (found) {
+				this.targets = merged;
+			}
+			// otherwise keep the targets of the stored configuration
+			this.targetMatrix.set(new TargetMatrix(this.targets));
+		}
+
 		public List<Map<String, List<String>>> getTargets() {
 			return this.targets;
 		}
 
+		/**
+		 * Returns the index of the current targets
+		 */
+		public TargetMatrix getTargetMatrix() {
+			return this.targetMatrix.get();
+		}
+
 		/**
 		 * Checks if given String is valid Jenkins user
 		 */
@@ -398,8 +669,9 @@ public class CobPipelineProperty extends UserProperty {
 				return FormValidation.error(Messages.Github_Login());
 			} 
 			try {
-				UserService githubUserSrv = new UserService();
-				githubUserSrv.getUser(value);
+				if (!GithubAccess.get().userExists(value)) {
+					return FormValidation.error(Messages.Github_LoginInvalid());
+				}
 				return FormValidation.ok();
 			} catch (IOException ex) {
 				return FormValidation.error(Messages.Github_LoginInvalid() + "\n" + ex.getMessage());
@@ -415,7 +687,7 @@ public class CobPipelineProperty extends UserProperty {
 				return FormValidation.error(Messages.Github_Password());
 			}
 			try {
-				GitHubClient client = new GitHubClient();
+				GitHubClient client = RateLimitedGitHubClient.create();
 				client.setCredentials(githubLogin, value);
 				UserService githubUserSrv = new UserService(client);
 				org.eclipse.egit.github.core.User user = githubUserSrv.getUser(githubLogin);
@@ -443,9 +715,99 @@ public class CobPipelineProperty extends UserProperty {
 		public boolean configure(StaplerRequest req, JSONObject form) throws FormException {
 			req.bindJSON(this, form);
 			super.save();
+			// credentials or owners may have changed
+			GithubAccess.get().reset();
+			PeriodicWork.all().get(TargetsRefreshWork.class).refreshNow();
 			return super.configure(req, form);
 		}
 
+		/**
+		 * Validates all repositories and dependencies of the given pipeline form in one call
+		 * @see PipelineValidator#addForm(JSONObject)
+		 */
+		@JavaScriptMethod
+		public JSONObject validatePipeline(JSONObject form) throws InterruptedException {
+			PipelineValidator validator = new PipelineValidator();
+			validator.addForm(form);
+			return validator.validateToJSON();
+		}
+
+		/**
+		 * Returns everything the configuration page needs to set up the blocks of
+		 * the given user's root repositories without further requests: the ROS
+		 * and Ubuntu releases of the targets, the selected build matrix of each
+		 * repository and the results of its checks as far as they can be
+		 * answered from the GitHub cache. <tt>complete</tt> tells whether all
+		 * checks could be answered.
+		 */
+		public JSONObject getBootstrap(CobPipelineProperty property) {
+			TargetMatrix matrix = getTargetMatrix();
+			JSONObject bootstrap = new JSONObject();
+			bootstrap.put("ubuntuReleases", matrix.getUbuntuReleases());
+			JSONObject supported = new JSONObject();
+			for (String rosDistro : matrix.getRosDistros()) {
+				supported.put(rosDistro, matrix.getSupportedUbuntuReleases(rosDistro));
+			}
+			bootstrap.put("supported", supported);
+
+			JSONArray repos = new JSONArray();
+			boolean complete = true;
+			if (property != null && property.getRootRepos() != null) {
+				final RootRepository.DescriptorImpl repoDesc = Jenkins.getInstance().getDescriptorByType(RootRepository.DescriptorImpl.class);
+				for (final RootRepository repo : property.getRootRepos()) {
+					JSONObject aux = new JSONObject();
+					aux.put("prioUbuntuDistro", repo.getPrioUbuntuDistro());
+					aux.put("matrix", repo.getMatrixDistroArch());
+					JSONObject validation = new JSONObject();
+					complete &= addCachedCheck(validation, "repoName", new Callable<String>() {
+						public String call() {
+							return repoDesc.checkName(repo.getRepoName(), repo.getFork());
+						}
+					});
+					complete &= addCachedCheck(validation, "fork", new Callable<String>() {
+						public String call() {
+							return repoDesc.checkFork(repo.getFork(), repo.getRepoName());
+						}
+					});
+					complete &= addCachedCheck(validation, "branch", new Callable<String>() {
+						public String call() {
+							return repoDesc.checkBranch(repo.getBranch(), repo.getFork(), repo.getRepoName());
+						}
+					});
+					aux.put("validation", validation);
+					repos.add(aux);
+					complete &= repo.getRepoDeps() == null || repo.getRepoDeps().isEmpty();
+				}
+			}
+			bootstrap.put("repos", repos);
+			bootstrap.put("complete", complete);
+			return bootstrap;
+		}
+
+		/**
+		 * Returns {@link #getBootstrap(CobPipelineProperty)} to be embedded in a script element
+		 */
+		public String getBootstrapScript(CobPipelineProperty property) {
+			return getBootstrap(property).toString().replace("</", "<\\/");
+		}
+
+		/**
+		 * Adds the result of the given check if it can be answered from the cache
+		 * @return false if it could not
+		 */
+		private boolean addCachedCheck(JSONObject validation, String field, Callable<String> check) {
+			try {
+				String result = GithubAccess.get().fromCache(check);
+				if (result != null) {
+					validation.put(field, PipelineValidator.toJSON(PipelineValidator.toFormValidation(result)));
+					return true;
+				}
+			} catch (Exception ex) {
+				LOGGER.log(Level.FINE, "Failed to check " + field + " from cache", ex);
+			}
+			return false;
+		}
+
 		/**
 		 * All {@link RepositoryDescriptor}s
 		 */
@@ -462,47 +824,130 @@ public class CobPipelineProperty extends UserProperty {
 
 	@Override
 	public UserProperty reconfigure(StaplerRequest req, JSONObject form) throws FormException {
-		req.bindJSON(this, form);
+		synchronized (this) {
+			reconfiguring = true;
+			// sent by the generate button to tell its generation when this submission is saved
+			pendingSaveId = Util.fixEmpty(form.optString("saveId"));
+		}
+		try {
+			req.bindJSON(this, form);
+		} finally {
+			synchronized (this) {
+				reconfiguring = false;
+			}
+		}
 		return this;
 	}
 
+	/**
+	 * Called once the user's configuration has been written
+	 */
+	private synchronized void saved() {
+		if (!reconfiguring && pendingSaveId != null) {
+			if (savedIds == null) {
+				savedIds = new LinkedHashSet<String>();
+			}
+			savedIds.add(pendingSaveId);
+			pendingSaveId = null;
+			for (Iterator<String> it = savedIds.iterator(); savedIds.size() > SAVED_IDS; ) {
+				it.next();
+				it.remove();
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until the submission of the given id has been saved
+	 * @param saveId id sent with the submission, null if the generation was requested without one
+	 * @return false if it was not saved within {@link #SAVE_TIMEOUT}
+	 */
+	private synchronized boolean awaitSave(String saveId) throws InterruptedException {
+		if (saveId == null) {
+			return true;
+		}
+		long deadline = System.currentTimeMillis() + SAVE_TIMEOUT;
+		while (savedIds == null || !savedIds.contains(saveId)) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return true;
+	}
+
 	public void save() throws IOException {
 		user.save();
 		LOGGER.log(Level.INFO, "Saved user configuration"); //TODO
 	}
 		
+	/**
+	 * Queues the generation of the pipeline
+	 * @param force generate even if neither the configuration nor jenkins_setup changed
+	 * @param saveId id of the submission to generate once it is saved, empty to generate the saved configuration
+	 * @return the {@link PipelineGenerator.Ticket} to poll with {@link #getGenerationStatus(String)}
+	 */
 	@JavaScriptMethod
-	public JSONObject doGeneratePipeline() throws Exception {
+	public JSONObject doGeneratePipeline(boolean force, String saveId) {
+		// the URL is only known for sure while the request is handled
+		String rootUrl = Jenkins.getInstance().getRootUrl();
+		if (rootUrl == null) {
+			JSONObject response = new JSONObject();
+			response.put("done", true);
+			response.put("message", Messages.Pipeline_GenerationNoRootUrl());
+			response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+			return response;
+		}
+		return PipelineGenerator.get().submit(user.getId(), this, rootUrl, Util.fixEmpty(saveId), force).toJSON();
+	}
+
+	/**
+	 * @return state of the given generation of this user or null if it is unknown
+	 */
+	@JavaScriptMethod
+	public JSONObject getGenerationStatus(String ticketId) {
+		PipelineGenerator.Ticket ticket = PipelineGenerator.get().getTicket(ticketId);
+		if (ticket == null || !ticket.getUserId().equals(user.getId())) {
+			return null;
+		}
+		return ticket.toJSON();
+	}
+
+	/**
+	 * Generates the pipeline, called by the {@link PipelineGenerator}
+	 * @param ticket to report the phases to
+	 */
+	JSONObject generatePipeline(PipelineGenerator.Ticket ticket) throws Exception {
 		JSONObject response  = new JSONObject();
 		String message = "";
 		
-		// wait until config.xml is updated
-		File configFile = new File(Jenkins.getInstance().getRootDir(), "users/" + user.getId() + "/config.xml");
-		Date mod = new Date();
-		Long start = mod.getTime();
-		Date now;
-		do {
-			try { 
-			    Thread.sleep(1000);
-			} catch(InterruptedException ex) {
-			    Thread.currentThread().interrupt();
-			}
-			if (configFile.exists()) {
-				try {
-					mod = new Date(configFile.lastModified());
-				} catch(Exception ex) {}
-			}
-			
-			now = new Date();
-			if (now.getTime() - start > 30000) {
-				throw new Exception("Timeout");
-			}
-		} while (start.equals(mod.getTime()) || now.getTime() - mod.getTime() > 15000);
+		// wait until the submitted configuration is saved
+		ticket.phase(PHASE_SAVE);
+		if (!awaitSave(ticket.getSaveId())) {
+			response.put("message", Messages.Pipeline_GenerationSaveTimeout());
+			response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+			return response;
+		}
+		
+		// check all repositories before anything is generated
+		ticket.phase(PHASE_VALIDATION);
+		PipelineValidator validator = new PipelineValidator();
+		validator.addRootRepositories(this.rootRepos);
+		Map.Entry<String, FormValidation> error = PipelineValidator.firstError(validator.validate());
+		if (error != null) {
+			response.put("message", Messages.Pipeline_GenerationInvalid(error.getKey(), error.getValue().getMessage()));
+			response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+			return response;
+		}
 				
+		ticket.phase(PHASE_CONFIG);
+		Map<String, String> hashes = new HashMap<String, String>();
+		String digest = null;
 		try {
 			Map<String, Object> data = new HashMap<String, Object>();
 			data.put("user_name", user.getId());
-			data.put("server_name", getMasterName());
+			data.put("server_name", getMasterName(ticket.getRootUrl()));
 			data.put("email", this.email);
 			data.put("committer_email_enabled", this.committerEmailEnabled);
 			Map<String, Object> repos = new HashMap<String, Object>();
@@ -548,120 +993,172 @@ public class CobPipelineProperty extends UserProperty {
 
 				repos.put(rootRepo.fullName, repo);
 			}
+
+			// the user wide settings end up in every job as well
+			String common = digestOf(data);
+			for (Map.Entry<String, Object> repo : repos.entrySet()) {
+				hashes.put(repo.getKey(), Util.getDigestOf(common + digestOf(repo.getValue())));
+			}
 			data.put("repositories", repos);
+			digest = digestOf(data);
 			Yaml yaml = new Yaml();
 			yaml.dump(data, getPipelineConfigFile());
 			LOGGER.log(Level.INFO, "Created "+getPipelineConfigFilePath().getAbsolutePath()); //TODO
 
 		} catch (IOException e) {
 			LOGGER.log(Level.WARNING, "Failed to save "+getPipelineConfigFilePath().getAbsolutePath(),e); //TODO
+			// an outdated file must neither be pushed nor recorded as generated
+			response.put("message", Util.escape(Util.fixNull(e.getMessage())));
+			response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+			return response;
 		}
 
-		// clone/pull configuration repository
-		File configRepoFolder = new File(Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getConfigFolder(), "jenkins_config");
-		String configRepoURL = "git@github.com:" + Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getPipelineReposOwner() + "/jenkins_config.git";
-		Git git = new Git(new FileRepository(configRepoFolder + "/.git"));
+		// nothing to do if the same configuration was generated with the same jenkins_setup before
+		String setupRevision = getDescriptor().getSetupRevision();
+		if (!ticket.isForce() && digest != null && digest.equals(generatedDigest)
+				&& setupRevision != null && setupRevision.equals(generatedSetupRevision)) {
+			response.put("message", Messages.Pipeline_GenerationUnchanged());
+			response.put("status", "<font color=\"green\">" + Messages.Pipeline_GenerationSuccess() + "</font>");
+			return response;
+		}
 
-		// check if configuration repository exists
-		if (!configRepoFolder.isDirectory()) {
-			try {
-				Git.cloneRepository()
-					.setURI(configRepoURL)
-					.setDirectory(configRepoFolder)
-					.call();
-				LOGGER.log(Level.INFO, "Successfully cloned configuration repository from "+configRepoURL); //TODO
-			} catch (Exception ex) {
-				LOGGER.log(Level.WARNING, "Failed to clone configuration repository", ex); //TODO
-			}
+		// write pipeline_config.yaml into the configuration repository together with other users' updates
+		ticket.phase(PHASE_CONFIG_REPO);
+		String configRepoPath = getMasterName(ticket.getRootUrl())+"/"+user.getId()+"/pipeline_config.yaml";
+		if (getDescriptor().writeConfigRepository(configRepoPath, FileUtils.readFileToByteArray(getPipelineConfigFilePath()), user.getId())) {
+			LOGGER.log(Level.INFO, "Successfully pushed "+configRepoPath+" to configuration repository"); //TODO
 		} else {
-			try {
-				git.pull().call();
-				LOGGER.log(Level.INFO, "Successfully pulled configuration repository from "+configRepoURL); //TODO
-			} catch (Exception ex) {
-				LOGGER.log(Level.WARNING, "Failed to pull configuration repository", ex); //TODO
-			}
+			response.put("message", Messages.Pipeline_GenerationPushFailed());
+			response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+			return response;
 		}
-		
-		// copy pipeline-config.yaml into repository
-		File configRepoFile = new File(configRepoFolder, getMasterName()+"/"+user.getId()+"/");
-		if (!configRepoFile.isDirectory()) configRepoFile.mkdirs();
-		String[] cpCommand = {"cp", "-f", getPipelineConfigFilePath().getAbsolutePath(), configRepoFile.getAbsolutePath()};
 
 		Runtime rt = Runtime.getRuntime();
 		Process proc;
 		BufferedReader readIn, readErr;
 		String s, feedback;
-		proc = rt.exec(cpCommand);
-		readIn = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-		readErr = new BufferedReader(new InputStreamReader(proc.getErrorStream()));
-		feedback = "";
-		while ((s = readErr.readLine()) != null) feedback += s+"\n";
-		if (feedback.length()!=0) {
-			LOGGER.log(Level.WARNING, "Failed to copy "+getPipelineConfigFilePath().getAbsolutePath()+" to config repository: "+configRepoFile.getAbsolutePath()); //TODO
-			LOGGER.log(Level.WARNING, feedback); //TODO
-		}
-		else {
-			LOGGER.log(Level.INFO, "Successfully copied "+getPipelineConfigFilePath().getAbsolutePath()+" to config repository: "+configRepoFile.getAbsolutePath()); //TODO
-		}
-		
-		// add
-		try {
-			git.add().addFilepattern(getMasterName()+"/"+user.getId()+"/pipeline_config.yaml").call();
-			LOGGER.log(Level.INFO, "Successfully added file to configuration repository"); //TODO
-		} catch (Exception e) {
-			LOGGER.log(Level.WARNING, "Failed to add "+getMasterName()+"/"+user.getId()+"/pipeline_config.yaml",e); //TODO
-		}
 
-		// commit
-		try {
-			git.commit().setMessage("Updated pipeline configuration for "+user.getId()).call();
-		} catch (Exception e) {
-			LOGGER.log(Level.WARNING, "Failed to commit change in "+getMasterName()+"/"+user.getId()+"/pipeline_config.yaml",e); //TODO
+		// only the jobs of changed and removed repositories need to be generated,
+		// the generation is skipped if there are none
+		Set<String> changed = new TreeSet<String>();
+		for (Map.Entry<String, String> hash : hashes.entrySet()) {
+			if (ticket.isForce() || setupRevision == null || !setupRevision.equals(generatedSetupRevision)
+					|| !hash.getValue().equals(getGeneratedHashes().get(hash.getKey()))) {
+				changed.add(hash.getKey());
+			}
 		}
-
-		// push
-		try {
-			git.push().call();
-			LOGGER.log(Level.INFO, "Successfully pushed configuration repository"); //TODO
-		} catch (Exception e) {
-			LOGGER.log(Level.WARNING, "Failed to push configuration repository",e); //TODO
-		}
-
-		// trigger Python job generation script
-		String[] generationCall = {new File(Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getConfigFolder(), "jenkins_setup/scripts/generate_buildpipeline.py").toString(),
-				"-m", Jenkins.getInstance().getRootUrl(),
-				"-l", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getJenkinsLogin(),
-				"-p", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getJenkinsPassword(),
-				"-c", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getConfigFolder(),
-				"-o", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getPipelineReposOwner(),
-				"-t", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getTarballLocation(),
-				"-u", user.getId()};
-		
-		proc = rt.exec(generationCall);
-		readIn = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-		readErr = new BufferedReader(new InputStreamReader(proc.getErrorStream()));
-		feedback = "";
-		while ((s = readErr.readLine()) != null) feedback += s+"\n";
-		if (feedback.length()!=0) {
-			LOGGER.log(Level.WARNING, "Failed to generate pipeline: "); //TODO
-			LOGGER.log(Level.WARNING, feedback);
-			response.put("message", feedback.replace("\n", "<br/>"));
-			response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+		Set<String> removed = new TreeSet<String>(getGeneratedHashes().keySet());
+		removed.removeAll(hashes.keySet());
+		if (changed.isEmpty() && removed.isEmpty()) {
+			// pushed and all jobs are up to date
+			recordGeneration(hashes, digest, setupRevision);
+			response.put("message", Messages.Pipeline_GenerationNoChangedRepos());
+			response.put("status", "<font color=\"green\">" + Messages.Pipeline_GenerationSuccess() + "</font>");
 			return response;
+		}
+
+		ticket.phase(PHASE_JOBS);
+		String templateDir = Util.fixEmptyAndTrim(getDescriptor().getJobTemplateDirectory());
+		if (templateDir != null) {
+			// create and update the jobs of the changed repositories in this Jenkins
+			// and delete the jobs of the removed ones
+			List<RootRepository> changedRepos = new ArrayList<RootRepository>();
+			for (RootRepository rootRepo : this.rootRepos) {
+				if (changed.contains(rootRepo.fullName)) {
+					changedRepos.add(rootRepo);
+				}
+			}
+			try {
+				message = Util.escape(new JobGenerator(new File(templateDir), user.getId()).generate(this, changedRepos, removed));
+				LOGGER.log(Level.INFO, "Successfully generated pipeline"); //TODO
+			} catch (IOException ex) {
+				LOGGER.log(Level.WARNING, "Failed to generate pipeline", ex);
+				response.put("message", Util.escape(Util.fixNull(ex.getMessage())));
+				response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+				return response;
+			}
 		} else {
+			// trigger Python job generation script, it cannot be restricted to
+			// the changed repositories and regenerates the jobs of all of them
+			String[] generationCall = {new File(Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getConfigFolder(), "jenkins_setup/scripts/generate_buildpipeline.py").toString(),
+					"-m", ticket.getRootUrl(),
+					"-l", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getJenkinsLogin(),
+					"-p", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getJenkinsPassword(),
+					"-c", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getConfigFolder(),
+					"-o", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getPipelineReposOwner(),
+					"-t", Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getTarballLocation(),
+					"-u", user.getId()};
+		
+			proc = rt.exec(generationCall);
+			readIn = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+			readErr = new BufferedReader(new InputStreamReader(proc.getErrorStream()));
 			feedback = "";
-			while ((s = readIn.readLine()) != null) feedback += s+"\n";
+			while ((s = readErr.readLine()) != null) feedback += s+"\n";
 			if (feedback.length()!=0) {
-				LOGGER.log(Level.INFO, feedback);
-				LOGGER.log(Level.INFO, "Successfully generated pipeline"); //TODO
-				message += feedback;
+				LOGGER.log(Level.WARNING, "Failed to generate pipeline: "); //TODO
+				LOGGER.log(Level.WARNING, feedback);
+				response.put("message", feedback.replace("\n", "<br/>"));
+				response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+				return response;
+			} else {
+				feedback = "";
+				while ((s = readIn.readLine()) != null) feedback += s+"\n";
+				if (feedback.length()!=0) {
+					LOGGER.log(Level.INFO, feedback);
+					LOGGER.log(Level.INFO, "Successfully generated pipeline"); //TODO
+					message += feedback;
+				}
 			}
 		}
+		recordGeneration(hashes, digest, setupRevision);
 		response.put("message", message.replace("\n", "<br/>"));
 		response.put("status", "<font color=\"green\">" + Messages.Pipeline_GenerationSuccess() + "</font>");
 		return response;
 	}
 
+	/**
+	 * Remembers what was generated, only to be called once the configuration
+	 * was pushed to jenkins_config and all jobs were generated
+	 */
+	private void recordGeneration(Map<String, String> hashes, String digest, String setupRevision) throws IOException {
+		this.generatedHashes = hashes;
+		this.generatedDigest = digest;
+		this.generatedSetupRevision = setupRevision;
+		save();
+	}
+
+	/**
+	 * @return hash of each root repository's configuration by full name as of the last successful generation
+	 */
+	public Map<String, String> getGeneratedHashes() {
+		return generatedHashes != null ? generatedHashes : Collections.<String, String>emptyMap();
+	}
+
+	/**
+	 * Digest of the given pipeline configuration independent of the order of its map entries
+	 */
+	private static String digestOf(Object config) {
+		return Util.getDigestOf(new Yaml().dump(sorted(config)));
+	}
+
+	private static Object sorted(Object config) {
+		if (config instanceof Map) {
+			Map<String, Object> result = new TreeMap<String, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) config).entrySet()) {
+				result.put(String.valueOf(entry.getKey()), sorted(entry.getValue()));
+			}
+			return result;
+		}
+		if (config instanceof List) {
+			List<Object> result = new ArrayList<Object>();
+			for (Object item : (List<?>) config) {
+				result.add(sorted(item));
+			}
+			return result;
+		}
+		return config;
+	}
+
 	private Writer getPipelineConfigFile() throws IOException {
 		return new FileWriter(getPipelineConfigFilePath());
 	}
@@ -695,4 +1192,20 @@ public class CobPipelineProperty extends UserProperty {
 			return "/user/"+User.current().getId()+"/configure";
 		}    
 	}
+
+	/**
+	 * Tells the {@link CobPipelineProperty} of a user when the user's configuration was saved
+	 */
+	@Extension
+	public static class SaveListenerImpl extends SaveableListener {
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (o instanceof User) {
+				CobPipelineProperty property = ((User) o).getProperty(CobPipelineProperty.class);
+				if (property != null) {
+					property.saved();
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.lib.BranchTrackingStatus;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+
+/**
+ * Single writer of the jenkins_config repository. The files of all
+ * generations requested within a short window are written, added and
+ * committed together and pushed with one pull and one push, instead of every
+ * generation running its own pull, commit and push on the shared checkout.
+ * 
+ * The window is <tt>de.fraunhofer.ipa.ConfigRepositoryWriter.batchWindow</tt>
+ * milliseconds (2000 by default). A generation gives up waiting for its batch
+ * after <tt>de.fraunhofer.ipa.ConfigRepositoryWriter.timeout</tt> seconds
+ * (300 by default), which also limits each pull and push.
+ */
+public class ConfigRepositoryWriter {
+
+	private static final long BATCH_WINDOW = Long.getLong(ConfigRepositoryWriter.class.getName() + ".batchWindow", 2000);
+
+	private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(Integer.getInteger(ConfigRepositoryWriter.class.getName() + ".timeout", 300));
+
+	private final File folder;
+
+	private final String remoteURL;
+
+	private final long window;
+
+	private final long timeout;
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Configuration repository writer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * updates waiting for the next batch
+	 */
+	private List<Update> pending = new ArrayList<Update>();
+
+	public ConfigRepositoryWriter(File folder, String remoteURL) {
+		this(folder, remoteURL, BATCH_WINDOW, TIMEOUT);
+	}
+
+	/**
+	 * @param folder working tree of the repository, cloned from remoteURL if it does not exist
+	 * @param window milliseconds to collect updates before they are written
+	 * @param timeout milliseconds to wait for the batch of an update to be pushed
+	 */
+	public ConfigRepositoryWriter(File folder, String remoteURL, long window, long timeout) {
+		this.folder = folder;
+		this.remoteURL = remoteURL;
+		this.window = window;
+		this.timeout = timeout;
+	}
+
+	public File getFolder() {
+		return folder;
+	}
+
+	public String getRemoteURL() {
+		return remoteURL;
+	}
+
+	/**
+	 * Writes the given content to the file at the given path of the repository
+	 * with the next batch and waits until that batch is pushed
+	 * @param path relative to the root of the repository
+	 * @param userId user the change is committed for
+	 * @return false if the batch could not be pushed or was not pushed in time
+	 * @throws RejectedExecutionException if the writer has been shut down
+	 */
+	public boolean write(String path, byte[] content, String userId) throws InterruptedException {
+		Update update = new Update(path, content, userId);
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				executor.schedule(new Runnable() {
+					public void run() {
+						flush();
+					}
+				}, window, TimeUnit.MILLISECONDS);
+			}
+			pending.add(update);
+		}
+		if (!update.done.await(timeout, TimeUnit.MILLISECONDS)) {
+			// e.g. a pull or push hanging on the network, the generation must not hang with it
+			LOGGER.log(Level.WARNING, "Configuration repository not pushed within " + timeout + "ms for " + userId);
+			return false;
+		}
+		return update.pushed;
+	}
+
+	/**
+	 * Stops the writer after the pending batch
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	private void flush() {
+		List<Update> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = new ArrayList<Update>();
+		}
+
+		boolean pushed = false;
+		Git git = null;
+		try {
+			git = open();
+
+			// the latest content of each path wins
+			Map<String, Update> files = new LinkedHashMap<String, Update>();
+			Set<String> users = new LinkedHashSet<String>();
+			for (Update update : batch) {
+				files.put(update.path, update);
+				users.add(update.userId);
+			}
+			for (Update update : files.values()) {
+				FileUtils.writeByteArrayToFile(new File(folder, update.path), update.content);
+				git.add().addFilepattern(update.path).call();
+			}
+
+			// only staged changes count, stray untracked files are not committed anyway
+			Status status = git.status().call();
+			if (status.getAdded().isEmpty() && status.getChanged().isEmpty() && status.getRemoved().isEmpty()) {
+				LOGGER.log(Level.FINE, "Configuration repository unchanged for " + users);
+			} else {
+				git.commit().setMessage("Updated pipeline configuration for " + StringUtils.join(users, ", ")).call();
+			}
+
+			// push unless there is nothing new, a batch that failed to push is retried by the next one
+			BranchTrackingStatus tracking = BranchTrackingStatus.of(git.getRepository(), git.getRepository().getBranch());
+			pushed = tracking != null && tracking.getAheadCount() == 0 || push(git);
+			LOGGER.log(Level.INFO, "Wrote " + files.size() + " file(s) to configuration repository in one batch for " + users);
+		} catch (Exception ex) {
+			LOGGER.log(Level.WARNING, "Failed to update configuration repository", ex);
+		} finally {
+			if (git != null) {
+				git.getRepository().close();
+			}
+			for (Update update : batch) {
+				update.pushed = pushed;
+				update.done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Clones the repository if necessary, pulls it otherwise. A batch committed
+	 * on a tree that could not be pulled would only be rejected when pushed, so
+	 * a failed pull fails the batch.
+	 */
+	private Git open() throws Exception {
+		if (!folder.isDirectory()) {
+			Git git = Git.cloneRepository()
+				.setURI(remoteURL)
+				.setDirectory(folder)
+				.setTimeout(getTimeoutSeconds())
+				.call();
+			LOGGER.log(Level.INFO, "Successfully cloned configuration repository from " + remoteURL);
+			return git;
+		}
+		Git git = new Git(new FileRepository(new File(folder, ".git")));
+		try {
+			if (!git.pull().setTimeout(getTimeoutSeconds()).call().isSuccessful()) {
+				throw new IOException("Failed to pull configuration repository from " + remoteURL);
+			}
+		} catch (Exception ex) {
+			git.getRepository().close();
+			throw ex;
+		}
+		return git;
+	}
+
+	private boolean push(Git git) throws Exception {
+		boolean ok = true;
+		for (PushResult result : git.push().setTimeout(getTimeoutSeconds()).call()) {
+			for (RemoteRefUpdate ref : result.getRemoteUpdates()) {
+				if (ref.getStatus() != RemoteRefUpdate.Status.OK && ref.getStatus() != RemoteRefUpdate.Status.UP_TO_DATE) {
+					LOGGER.log(Level.WARNING, "Failed to push " + ref.getRemoteName() + " of configuration repository: " + ref.getStatus());
+					ok = false;
+				}
+			}
+		}
+		return ok;
+	}
+
+	private int getTimeoutSeconds() {
+		return (int)Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeout));
+	}
+
+	private static final class Update {
+		private final String path;
+		private final byte[] content;
+		private final String userId;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile boolean pushed;
+
+		Update(String path, byte[] content, String userId) {
+			this.path = path;
+			this.content = content;
+			this.userId = userId;
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(ConfigRepositoryWriter.class.getName());
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.Extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Answers repository and branch queries from bare mirrors in the directory
+ * configured by {@link CobPipelineProperty.DescriptorImpl#getGitMirrorDirectory()}.
+ * The mirror of <tt>owner/name</tt> is expected in <tt>&lt;directory&gt;/owner/name.git</tt>
+ * or <tt>&lt;directory&gt;/owner/name</tt>, as created by <tt>git clone --mirror</tt>.
+ * 
+ * Repositories without mirror are left to the next provider. A branch which
+ * is missing in the mirror is left to it as well, since the mirror may not
+ * have been updated since the branch was pushed.
+ */
+@Extension(ordinal = 100)
+public class GitMirrorMetadataProvider extends RepositoryMetadataProvider {
+
+	private static final Logger LOGGER = Logger.getLogger(GitMirrorMetadataProvider.class.getName());
+
+	/**
+	 * Returns the git directory of the mirror of the given repository, null if there is none
+	 */
+	File getMirror(String owner, String name) {
+		CobPipelineProperty.DescriptorImpl desc = Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class);
+		String directory = desc.getGitMirrorDirectory();
+		if (directory == null || directory.length() == 0 || !isPlainName(owner) || !isPlainName(name)) {
+			return null;
+		}
+		return RepositoryCache.FileKey.resolve(new File(new File(directory, owner), name), FS.DETECTED);
+	}
+
+	/**
+	 * GitHub names never contain path separators, anything else must not leave the mirror directory
+	 */
+	private static boolean isPlainName(String name) {
+		return name != null && name.length() > 0 && !name.equals(".") && !name.equals("..")
+				&& name.indexOf('/') < 0 && name.indexOf('\\') < 0;
+	}
+
+	private org.eclipse.jgit.lib.Repository open(File mirror) throws IOException {
+		return RepositoryCache.open(RepositoryCache.FileKey.exact(mirror, FS.DETECTED));
+	}
+
+	@Override
+	public Boolean repositoryExists(String owner, String name) {
+		return getMirror(owner, name) != null ? Boolean.TRUE : null;
+	}
+
+	@Override
+	public NameIndex getBranchNames(String owner, String name) {
+		File mirror = getMirror(owner, name);
+		if (mirror == null) {
+			return null;
+		}
+		try {
+			org.eclipse.jgit.lib.Repository repo = open(mirror);
+			try {
+				return new NameIndex(repo.getRefDatabase().getRefs(Constants.R_HEADS).keySet());
+			} finally {
+				repo.close();
+			}
+		} catch (IOException ex) {
+			LOGGER.log(Level.WARNING, "Failed to read branches of mirror " + mirror, ex);
+			return null;
+		}
+	}
+
+	@Override
+	public Boolean branchExists(String owner, String name, String branch) {
+		File mirror = getMirror(owner, name);
+		if (mirror == null) {
+			return null;
+		}
+		try {
+			org.eclipse.jgit.lib.Repository repo = open(mirror);
+			try {
+				Ref ref = repo.getRefDatabase().getRef(Constants.R_HEADS + branch);
+				if (ref != null && ref.getName().equals(Constants.R_HEADS + branch)) {
+					return Boolean.TRUE;
+				}
+			} finally {
+				repo.close();
+			}
+		} catch (IOException ex) {
+			LOGGER.log(Level.WARNING, "Failed to read branch " + branch + " of mirror " + mirror, ex);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,679 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.model.Hudson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+
+import org.eclipse.egit.github.core.RepositoryBranch;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.RequestException;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Access to the GitHub repository, fork and branch information used by the
+ * {@link RepositoryDescriptor}s. All lookups go through a shared {@link GithubCache}.
+ * Concurrent lookups of the same resource wait for a single request to GitHub.
+ * If the GitHub quota is used up, expired cache entries are returned instead.
+ * Expired entries are revalidated with their ETags, so unchanged resources
+ * are neither counted against the quota nor parsed again.
+ * The cache is read from and written to JENKINS_HOME by a {@link GithubCacheStore}.
+ */
+public class GithubAccess {
+
+	private static final GithubAccess INSTANCE = new GithubAccess();
+
+	private static final String STORE_FILE = "cob-pipeline-github-cache.xml";
+
+	/**
+	 * page size of GitHub listings, the maximum GitHub allows
+	 */
+	private static final int PER_PAGE = 100;
+
+	private static final Type REPOSITORY_PAGE = new TypeToken<List<org.eclipse.egit.github.core.Repository>>() {}.getType();
+
+	private static final Type BRANCH_PAGE = new TypeToken<List<RepositoryBranch>>() {}.getType();
+
+	/**
+	 * milliseconds after which a fork network is listed completely again,
+	 * in between only forks created since the last listing are fetched
+	 */
+	private static final long FORK_REBUILD_INTERVAL = TimeUnit.HOURS.toMillis(Integer.getInteger(GithubAccess.class.getName() + ".forkRebuildInterval", 24));
+
+	/**
+	 * Returns the instance shared by all {@link RepositoryDescriptor}s
+	 */
+	public static GithubAccess get() {
+		return INSTANCE;
+	}
+
+	private final GithubCache cache = new GithubCache(
+			Integer.getInteger(GithubAccess.class.getName() + ".cacheSize", 2000),
+			TimeUnit.MINUTES.toMillis(Integer.getInteger(GithubAccess.class.getName() + ".cacheTtl", 10)),
+			TimeUnit.MINUTES.toMillis(Integer.getInteger(GithubAccess.class.getName() + ".missingTtl", 1)));
+
+	private volatile GithubCacheStore store;
+
+	/**
+	 * requests to GitHub which are currently running
+	 */
+	private final ConcurrentMap<GithubCache.Key, FutureTask<Object>> inflight = new ConcurrentHashMap<GithubCache.Key, FutureTask<Object>>();
+
+	/**
+	 * set while lookups of the current thread may only be answered from the
+	 * cache, its element tells whether a lookup missed the cache
+	 */
+	private static final ThreadLocal<boolean[]> CACHE_ONLY = new ThreadLocal<boolean[]>();
+
+	/**
+	 * time of the last complete listing by fork network
+	 */
+	private final ConcurrentMap<GithubCache.Key, Long> forkRebuilds = new ConcurrentHashMap<GithubCache.Key, Long>();
+
+	/**
+	 * client configured with the global GitHub credentials, replaced as a whole on {@link #reset()}
+	 */
+	private volatile RateLimitedGitHubClient githubClient;
+
+	/**
+	 * Loads a resource from GitHub if it is not cached
+	 */
+	private abstract static class Lookup<T> {
+		/**
+		 * ETag of the loaded resource, stored with it in the cache
+		 */
+		String etag;
+
+		/**
+		 * @param previous the cached entry of the resource or null. Its value
+		 * is returned as it is if GitHub reports the resource as not modified.
+		 */
+		abstract T load(GithubCache.Entry previous) throws IOException;
+	}
+
+	/**
+	 * Returns a client with the globally given GitHub configurations
+	 */
+	private RateLimitedGitHubClient getClient() {
+		RateLimitedGitHubClient client = this.githubClient;
+		if (client == null) {
+			synchronized (this) {
+				client = this.githubClient;
+				if (client == null) {
+					CobPipelineProperty.DescriptorImpl desc = Hudson.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class);
+					client = RateLimitedGitHubClient.create();
+					client.setCredentials(desc.getGithubLogin(), desc.getGithubPassword());
+					this.githubClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	public String getGithubLogin() {
+		return getClient().getUser();
+	}
+
+	/**
+	 * Drops the configured client and all cached lookups, e.g. after the
+	 * global GitHub credentials changed
+	 */
+	public void reset() {
+		synchronized (this) {
+			this.githubClient = null;
+		}
+		this.cache.invalidateAll();
+	}
+
+	public GithubCache getCache() {
+		ensureLoaded();
+		return this.cache;
+	}
+
+	/**
+	 * Reads the stored cache entries on first access
+	 */
+	private void ensureLoaded() {
+		if (this.store != null) {
+			return;
+		}
+		synchronized (this) {
+			if (this.store == null) {
+				GithubCacheStore aux = new GithubCacheStore(new File(Jenkins.getInstance().getRootDir(), STORE_FILE));
+				aux.load(this.cache);
+				this.store = aux;
+			}
+		}
+	}
+
+	/**
+	 * Writes the cache to disk if it changed since it was last written
+	 */
+	public void save() throws IOException {
+		ensureLoaded();
+		synchronized (this.store) {
+			this.store.save(this.cache);
+		}
+	}
+
+	/**
+	 * Runs the given check with all lookups answered from the cache,
+	 * including expired entries, and without any request to GitHub
+	 * @return the result of the check, null if it needed something which is not cached
+	 */
+	public <T> T fromCache(Callable<T> check) throws Exception {
+		boolean[] previous = CACHE_ONLY.get();
+		boolean[] missed = new boolean[1];
+		CACHE_ONLY.set(missed);
+		try {
+			T result = check.call();
+			return missed[0] ? null : result;
+		} catch (Exception ex) {
+			if (missed[0]) {
+				return null;
+			}
+			throw ex;
+		} finally {
+			if (previous == null) {
+				CACHE_ONLY.remove();
+			} else {
+				CACHE_ONLY.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Returns the cached value or loads it from GitHub. Returns null if
+	 * GitHub answered with 'not found'. If the same resource is already
+	 * requested by another thread, waits for its result.
+	 */
+	private <T> T lookup(GithubCache.Key key, Lookup<T> loader) throws IOException {
+		return lookup(key, loader, false);
+	}
+
+	/**
+	 * @param reload whether to ignore the cached value and ask GitHub again
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T lookup(final GithubCache.Key key, final Lookup<T> loader, final boolean reload) throws IOException {
+		ensureLoaded();
+		GithubCache.Entry entry = this.cache.get(key);
+		if (entry != null && !reload) {
+			return (T)entry.getValue();
+		}
+		boolean[] cacheOnly = CACHE_ONLY.get();
+		if (cacheOnly != null) {
+			entry = this.cache.getStale(key);
+			if (entry == null) {
+				cacheOnly[0] = true;
+				throw new IOException("Not cached: " + key);
+			}
+			return (T)entry.getValue();
+		}
+
+		FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			public Object call() throws IOException {
+				return load(key, loader, reload);
+			}
+		});
+		FutureTask<Object> running = this.inflight.putIfAbsent(key, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				this.inflight.remove(key, task);
+			}
+		}
+
+		try {
+			return (T)running.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw (IOException)new InterruptedIOException("Interrupted while waiting for " + key).initCause(ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private <T> T load(GithubCache.Key key, Lookup<T> loader, boolean reload) throws IOException {
+		// another request may have finished in the meantime
+		GithubCache.Entry entry = this.cache.get(key);
+		if (entry != null && !reload) {
+			@SuppressWarnings("unchecked")
+			T value = (T)entry.getValue();
+			return value;
+		}
+		GithubCache.Entry previous = this.cache.getStale(key);
+		if (previous != null && previous.isMissing()) {
+			previous = null;
+		}
+		try {
+			T value = loader.load(previous);
+			this.cache.put(key, value, loader.etag);
+			return value;
+		} catch (RequestException ex) {
+			if (ex.getStatus() == HttpURLConnection.HTTP_NOT_FOUND) {
+				this.cache.putMissing(key);
+				return null;
+			}
+			throw ex;
+		} catch (GithubScheduler.RequestNotSentException ex) {
+			// answer with outdated information rather than nothing
+			entry = reload ? null : this.cache.getStale(key);
+			if (entry != null) {
+				@SuppressWarnings("unchecked")
+				T value = (T)entry.getValue();
+				return value;
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Fetches a single resource, conditionally if the previous entry has an ETag
+	 * @return the resource, null if it is unchanged since the previous entry
+	 */
+	private Object getSingle(String uri, Type type, GithubCache.Entry previous, Lookup<?> loader) throws IOException {
+		GitHubRequest request = new GitHubRequest();
+		request.setUri(uri);
+		request.setType(type);
+		String etag = previous == null ? null : previous.getEtag();
+		GitHubResponse response = getClient().getConditional(request, etag);
+		if (response == null) {
+			loader.etag = etag;
+			return null;
+		}
+		loader.etag = getClient().getLastEtag();
+		return response.getBody();
+	}
+
+	/**
+	 * Fetches all pages of a listing. The ETags of the pages are kept one per
+	 * line. If the previous entry has them, every page is first requested
+	 * conditionally and nothing is fetched if none of them changed.
+	 * @param previousSize number of items in the previous entry
+	 * @return the items of all pages, null if the listing is unchanged
+	 */
+	private List<Object> getPages(String uri, Type type, GithubCache.Entry previous, int previousSize, Lookup<?> loader) throws IOException {
+		if (previous != null && previous.getEtag() != null && isUnchanged(uri, type, previous.getEtag().split("\n"), previousSize)) {
+			loader.etag = previous.getEtag();
+			return null;
+		}
+		List<Object> items = new ArrayList<Object>();
+		StringBuilder etags = new StringBuilder();
+		for (int page = 1; ; page++) {
+			List<?> aux = (List<?>)getClient().get(pageRequest(uri, type, page)).getBody();
+			String etag = getClient().getLastEtag();
+			if (page > 1) {
+				etags.append('\n');
+			}
+			etags.append(etag == null ? "" : etag);
+			if (aux == null) {
+				break;
+			}
+			items.addAll(aux);
+			if (aux.size() < PER_PAGE) {
+				break;
+			}
+		}
+		loader.etag = etags.toString();
+		return items;
+	}
+
+	private boolean isUnchanged(String uri, Type type, String[] etags, int previousSize) throws IOException {
+		for (int i = 0; i < etags.length; i++) {
+			if (etags[i].length() == 0 || getClient().getConditional(pageRequest(uri, type, i + 1), etags[i]) != null) {
+				return false;
+			}
+		}
+		if (previousSize < etags.length * PER_PAGE) {
+			return true;
+		}
+		// a full last page may have been followed by a new one
+		List<?> next = (List<?>)getClient().get(pageRequest(uri, type, etags.length + 1)).getBody();
+		return next == null || next.isEmpty();
+	}
+
+	private static GitHubRequest pageRequest(String uri, Type type, int page) {
+		GitHubRequest request = new GitHubRequest();
+		request.setUri(uri + (uri.indexOf('?') < 0 ? "?" : "&") + "per_page=" + PER_PAGE + "&page=" + page);
+		request.setType(type);
+		return request;
+	}
+
+	private static int size(GithubCache.Entry entry) {
+		return entry == null ? 0 : ((NameIndex)entry.getValue()).size();
+	}
+
+	/**
+	 * Returns the names of all repositories of the given owner
+	 */
+	public NameIndex getRepositoryNames(String owner) throws IOException {
+		return getRepositoryNames(owner, false);
+	}
+
+	private NameIndex getRepositoryNames(final String owner, boolean reload) throws IOException {
+		NameIndex names = lookup(new GithubCache.Key(owner, null, GithubCache.Kind.REPOSITORIES), new Lookup<NameIndex>() {
+			@Override
+			NameIndex load(GithubCache.Entry previous) throws IOException {
+				List<Object> repos = getPages("/users/" + encode(owner) + "/repos", REPOSITORY_PAGE, previous, size(previous), this);
+				if (repos == null) {
+					return (NameIndex)previous.getValue();
+				}
+				Set<String> aux = new HashSet<String>();
+				for (Object item : repos) {
+					org.eclipse.egit.github.core.Repository repo = (org.eclipse.egit.github.core.Repository)item;
+					aux.add(repo.getName());
+					// the list lacks only the parent, which forks don't have
+					if (!repo.isFork()) {
+						cache.put(new GithubCache.Key(owner, repo.getName(), GithubCache.Kind.REPOSITORY), repo);
+					}
+				}
+				return new NameIndex(aux);
+			}
+		}, reload);
+		return names == null ? NameIndex.EMPTY : names;
+	}
+
+	/**
+	 * Returns the given repository or null if it does not exist
+	 */
+	public org.eclipse.egit.github.core.Repository getRepository(final String owner, final String name) throws IOException {
+		return lookup(new GithubCache.Key(owner, name, GithubCache.Kind.REPOSITORY), new Lookup<org.eclipse.egit.github.core.Repository>() {
+			@Override
+			org.eclipse.egit.github.core.Repository load(GithubCache.Entry previous) throws IOException {
+				Object repo = getSingle("/repos/" + encode(owner) + "/" + encode(name), org.eclipse.egit.github.core.Repository.class, previous, this);
+				return (org.eclipse.egit.github.core.Repository)(repo == null ? previous.getValue() : repo);
+			}
+		});
+	}
+
+	/**
+	 * Returns the fresh entry of a cached list, or any entry while only the cache may be asked
+	 */
+	private GithubCache.Entry getList(GithubCache.Key key) {
+		return CACHE_ONLY.get() != null ? this.cache.getStale(key) : this.cache.get(key);
+	}
+
+	/**
+	 * Returns true if the given repository exists. Uses the cached repository
+	 * list of the owner if available, otherwise asks only for the single repository.
+	 */
+	public boolean repositoryExists(String owner, String name) throws IOException {
+		ensureLoaded();
+		GithubCache.Entry names = getList(new GithubCache.Key(owner, null, GithubCache.Kind.REPOSITORIES));
+		if (names != null && !names.isMissing() && ((NameIndex)names.getValue()).contains(name)) {
+			return true;
+		}
+		// private or foreign repositories may be missing in the list
+		return getRepository(owner, name) != null;
+	}
+
+	/**
+	 * Returns the owners of all repositories in the fork network of the given
+	 * repository, i.e. the owner of its source repository and of all direct
+	 * forks of the source. Repositories of the same network share one index.
+	 */
+	public NameIndex getForkNetwork(String owner, String name) throws IOException {
+		return getForkNetwork(owner, name, false);
+	}
+
+	private NameIndex getForkNetwork(String owner, String name, boolean reload) throws IOException {
+		org.eclipse.egit.github.core.Repository repo = getRepository(owner, name);
+		if (repo == null) {
+			return NameIndex.EMPTY;
+		}
+		org.eclipse.egit.github.core.Repository source = repo.getSource() != null ? repo.getSource() : repo.getParent();
+		if (source == null) {
+			source = repo;
+		}
+		return getForkOwners(source.getOwner().getLogin(), source.getName(), reload);
+	}
+
+	/**
+	 * Returns the owner of the given repository together with the owners of all
+	 * its forks. The forks are listed completely only once per
+	 * {@link #FORK_REBUILD_INTERVAL}, in between only the forks created since
+	 * the last listing are fetched.
+	 */
+	private NameIndex getForkOwners(final String owner, final String name, boolean reload) throws IOException {
+		final GithubCache.Key key = new GithubCache.Key(owner, name, GithubCache.Kind.FORKS);
+		NameIndex owners = lookup(key, new Lookup<NameIndex>() {
+			@Override
+			NameIndex load(GithubCache.Entry previous) throws IOException {
+				String uri = "/repos/" + encode(owner) + "/" + encode(name) + "/forks?sort=newest";
+				long now = System.currentTimeMillis();
+				Long rebuilt = forkRebuilds.putIfAbsent(key, now);
+				if (previous == null || (rebuilt != null && now - rebuilt > FORK_REBUILD_INTERVAL)) {
+					forkRebuilds.put(key, now);
+					Set<String> aux = new HashSet<String>();
+					aux.add(owner);
+					for (Object fork : getPages(uri, REPOSITORY_PAGE, null, 0, this)) {
+						aux.add(((org.eclipse.egit.github.core.Repository)fork).getOwner().getLogin());
+					}
+					// only the first page is revalidated
+					etag = firstEtag(etag);
+					return new NameIndex(aux);
+				}
+
+				NameIndex known = (NameIndex)previous.getValue();
+				Set<String> added = new HashSet<String>();
+				etag = firstEtag(previous.getEtag());
+				for (int page = 1; ; page++) {
+					GitHubResponse response = getClient().getConditional(pageRequest(uri, REPOSITORY_PAGE, page), page == 1 ? etag : null);
+					if (response == null) {
+						return known;
+					}
+					if (page == 1) {
+						etag = getClient().getLastEtag();
+					}
+					List<?> forks = (List<?>)response.getBody();
+					if (forks == null) {
+						break;
+					}
+					// newest first, so all forks after the first known one are known as well
+					boolean reachedKnown = false;
+					for (Object fork : forks) {
+						String login = ((org.eclipse.egit.github.core.Repository)fork).getOwner().getLogin();
+						if (known.contains(login)) {
+							reachedKnown = true;
+							break;
+						}
+						added.add(login);
+					}
+					if (reachedKnown || forks.size() < PER_PAGE) {
+						break;
+					}
+				}
+				if (added.isEmpty()) {
+					return known;
+				}
+				added.addAll(known.asList());
+				return new NameIndex(added);
+			}
+		}, reload);
+		return owners == null ? NameIndex.EMPTY : owners;
+	}
+
+	private static String firstEtag(String etags) {
+		if (etags == null || etags.length() == 0) {
+			return null;
+		}
+		int end = etags.indexOf('\n');
+		return end < 0 ? etags : etags.substring(0, end);
+	}
+
+	/**
+	 * Returns the branch names of the given repository
+	 */
+	public NameIndex getBranchNames(String owner, String name) throws IOException {
+		return getBranchNames(owner, name, false);
+	}
+
+	private NameIndex getBranchNames(final String owner, final String name, boolean reload) throws IOException {
+		NameIndex branches = lookup(new GithubCache.Key(owner, name, GithubCache.Kind.BRANCHES), new Lookup<NameIndex>() {
+			@Override
+			NameIndex load(GithubCache.Entry previous) throws IOException {
+				List<Object> branches = getPages("/repos/" + encode(owner) + "/" + encode(name) + "/branches", BRANCH_PAGE, previous, size(previous), this);
+				if (branches == null) {
+					return (NameIndex)previous.getValue();
+				}
+				Set<String> aux = new HashSet<String>();
+				for (Object branch : branches) {
+					aux.add(((RepositoryBranch)branch).getName());
+				}
+				return new NameIndex(aux);
+			}
+		}, reload);
+		return branches == null ? NameIndex.EMPTY : branches;
+	}
+
+	/**
+	 * Returns true if the given branch exists. Uses the cached branch list
+	 * of the repository if available, otherwise asks only for the single branch.
+	 */
+	public boolean branchExists(final String owner, final String name, final String branch) throws IOException {
+		ensureLoaded();
+		GithubCache.Entry branches = getList(new GithubCache.Key(owner, name, GithubCache.Kind.BRANCHES));
+		if (branches != null) {
+			return !branches.isMissing() && ((NameIndex)branches.getValue()).contains(branch);
+		}
+		return lookup(new GithubCache.Key(owner, name, GithubCache.Kind.BRANCH, branch), new Lookup<RepositoryBranch>() {
+			@Override
+			RepositoryBranch load(GithubCache.Entry previous) throws IOException {
+				Object aux = getSingle("/repos/" + encode(owner) + "/" + encode(name) + "/branches/" + encode(branch).replace("%2F", "/"), RepositoryBranch.class, previous, this);
+				return (RepositoryBranch)(aux == null ? previous.getValue() : aux);
+			}
+		}) != null;
+	}
+
+	private static String encode(String segment) {
+		try {
+			return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+	/**
+	 * Reloads the repository names of the given owner together with the
+	 * fork network and branches of each of its repositories into the cache
+	 */
+	public void refresh(String owner) throws IOException {
+		for (String name : getRepositoryNames(owner, true)) {
+			getBranchNames(owner, name, true);
+			getForkNetwork(owner, name, true);
+		}
+	}
+
+	/**
+	 * Updates the cache after GitHub reported a created or deleted branch
+	 */
+	public void branchChanged(String owner, String name, String branch, boolean exists) {
+		ensureLoaded();
+		this.cache.patchNames(new GithubCache.Key(owner, name, GithubCache.Kind.BRANCHES), branch, exists);
+		GithubCache.Key key = new GithubCache.Key(owner, name, GithubCache.Kind.BRANCH, branch);
+		if (exists) {
+			this.cache.put(key, new RepositoryBranch().setName(branch));
+		} else {
+			this.cache.putMissing(key);
+		}
+	}
+
+	/**
+	 * Updates the cache after GitHub reported a new fork of the given repository.
+	 * Only the fork network of a source repository is patched, as forks of
+	 * forks are not part of it.
+	 */
+	public void forkCreated(String owner, String name, String forkOwner, String forkName) {
+		ensureLoaded();
+		this.cache.patchNames(new GithubCache.Key(owner, name, GithubCache.Kind.FORKS), forkOwner, true);
+		this.cache.remove(new GithubCache.Key(forkOwner, null, GithubCache.Kind.REPOSITORIES));
+		this.cache.remove(new GithubCache.Key(forkOwner, forkName, GithubCache.Kind.REPOSITORY));
+	}
+
+	/**
+	 * Drops all cached information of a repository which was created, deleted,
+	 * renamed or changed its visibility
+	 */
+	public void repositoryChanged(String owner, String name) {
+		ensureLoaded();
+		this.cache.invalidate(owner, name);
+	}
+
+	/**
+	 * Returns true if the given GitHub user or organization exists
+	 */
+	public boolean userExists(final String login) throws IOException {
+		return lookup(new GithubCache.Key(login, null, GithubCache.Kind.USER), new Lookup<org.eclipse.egit.github.core.User>() {
+			@Override
+			org.eclipse.egit.github.core.User load(GithubCache.Entry previous) throws IOException {
+				Object user = getSingle("/users/" + encode(login), org.eclipse.egit.github.core.User.class, previous, this);
+				return (org.eclipse.egit.github.core.User)(user == null ? previous.getValue() : user);
+			}
+		}) != null;
+	}
+}
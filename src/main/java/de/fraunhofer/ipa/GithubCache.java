@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded in-memory cache for GitHub lookups. Entries are evicted in
+ * least-recently-used order once {@link #getMaxEntries()} is reached and
+ * expire after a fixed time to live. Lookups which ended in a 404 are
+ * stored as missing entries with a shorter time to live. Expired entries are
+ * kept until they are evicted, so they can still serve as fallback while
+ * GitHub can not be asked.
+ */
+public class GithubCache {
+
+	/**
+	 * Type of the cached GitHub resource
+	 */
+	public enum Kind {
+		REPOSITORIES, REPOSITORY, FORKS, BRANCHES, BRANCH, USER
+	}
+
+	/**
+	 * Cache key consisting of owner, repository (may be null), kind and
+	 * the name of a single resource of the repository (may be null)
+	 */
+	public static final class Key {
+		private final String owner;
+		private final String repo;
+		private final Kind kind;
+		private final String name;
+
+		public Key(String owner, String repo, Kind kind) {
+			this(owner, repo, kind, null);
+		}
+
+		public Key(String owner, String repo, Kind kind, String name) {
+			this.owner = owner;
+			this.repo = repo;
+			this.kind = kind;
+			this.name = name;
+		}
+
+		public String getOwner() {
+			return this.owner;
+		}
+
+		public String getRepo() {
+			return this.repo;
+		}
+
+		public Kind getKind() {
+			return this.kind;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key that = (Key)o;
+			return this.kind == that.kind && this.owner.equals(that.owner)
+					&& (this.repo == null ? that.repo == null : this.repo.equals(that.repo))
+					&& (this.name == null ? that.name == null : this.name.equals(that.name));
+		}
+
+		@Override
+		public int hashCode() {
+			int h = this.owner.hashCode();
+			h = 31*h + (this.repo == null ? 0 : this.repo.hashCode());
+			h = 31*h + (this.name == null ? 0 : this.name.hashCode());
+			return 31*h + this.kind.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return this.kind + ":" + this.owner + (this.repo == null ? "" : "/" + this.repo)
+					+ (this.name == null ? "" : "#" + this.name);
+		}
+	}
+
+	/**
+	 * Cached value together with the time it was fetched, its expiration
+	 * time and the ETag GitHub sent with it (may be null)
+	 */
+	public static final class Entry {
+		private final Object value;
+		private final long fetched;
+		private final long expires;
+		private final String etag;
+
+		private Entry(Object value, long fetched, long expires, String etag) {
+			this.value = value;
+			this.fetched = fetched;
+			this.expires = expires;
+			this.etag = etag;
+		}
+
+		/**
+		 * Returns true if GitHub answered the lookup with 'not found'
+		 */
+		public boolean isMissing() {
+			return this.value == null;
+		}
+
+		public Object getValue() {
+			return this.value;
+		}
+
+		public long getFetched() {
+			return this.fetched;
+		}
+
+		public String getEtag() {
+			return this.etag;
+		}
+
+		private boolean isExpired(long now) {
+			return now >= this.expires;
+		}
+	}
+
+	private final int maxEntries;
+
+	private final long ttl;
+
+	private final long missingTtl;
+
+	private final LinkedHashMap<Key, Entry> entries;
+
+	/**
+	 * number of modifications, to find out whether the cache needs to be stored again
+	 */
+	private int modCount;
+
+	public GithubCache(final int maxEntries, long ttl, long missingTtl) {
+		this.maxEntries = maxEntries;
+		this.ttl = ttl;
+		this.missingTtl = missingTtl;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	public long getTtl() {
+		return this.ttl;
+	}
+
+	/**
+	 * Returns the valid entry for the given key or null if nothing is cached
+	 */
+	public synchronized Entry get(Key key) {
+		Entry entry = this.entries.get(key);
+		if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the entry for the given key even if it is expired
+	 */
+	public synchronized Entry getStale(Key key) {
+		return this.entries.get(key);
+	}
+
+	public synchronized void put(Key key, Object value) {
+		put(key, value, null);
+	}
+
+	public synchronized void put(Key key, Object value, String etag) {
+		restore(key, value, System.currentTimeMillis(), etag);
+	}
+
+	/**
+	 * Remembers that the given resource does not exist
+	 */
+	public synchronized void putMissing(Key key) {
+		put(key, null, null);
+	}
+
+	/**
+	 * Adds an entry which was fetched at the given time, e.g. when read from disk
+	 * @param value null if the resource does not exist
+	 */
+	public synchronized void restore(Key key, Object value, long fetched, String etag) {
+		long expires = fetched + (value == null ? this.missingTtl : this.ttl);
+		this.entries.put(key, new Entry(value, fetched, expires, etag));
+		this.modCount++;
+	}
+
+	/**
+	 * Adds a name to or removes it from a cached name list, e.g. after GitHub
+	 * reported a new branch. Keeps the fetch time and ETag of the entry and
+	 * does nothing if the list is not cached.
+	 */
+	public synchronized void patchNames(Key key, String name, boolean add) {
+		Entry entry = this.entries.get(key);
+		if (entry == null || entry.isMissing()) {
+			return;
+		}
+		NameIndex names = (NameIndex)entry.value;
+		if (names.contains(name) == add) {
+			return;
+		}
+		Set<String> aux = new HashSet<String>(names.asList());
+		if (add) {
+			aux.add(name);
+		} else {
+			aux.remove(name);
+		}
+		this.entries.put(key, new Entry(new NameIndex(aux), entry.fetched, entry.expires, entry.etag));
+		this.modCount++;
+	}
+
+	public synchronized void remove(Key key) {
+		if (this.entries.remove(key) != null) {
+			this.modCount++;
+		}
+	}
+
+	/**
+	 * Returns a copy of all entries including the expired ones
+	 */
+	public synchronized List<Map.Entry<Key, Entry>> snapshot() {
+		List<Map.Entry<Key, Entry>> snapshot = new ArrayList<Map.Entry<Key, Entry>>(this.entries.size());
+		for (Map.Entry<Key, Entry> entry : this.entries.entrySet()) {
+			snapshot.add(new AbstractMap.SimpleImmutableEntry<Key, Entry>(entry));
+		}
+		return snapshot;
+	}
+
+	public synchronized int getModCount() {
+		return this.modCount;
+	}
+
+	/**
+	 * Removes all entries of the given owner
+	 */
+	public synchronized void invalidate(String owner) {
+		Iterator<Key> iter = this.entries.keySet().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().owner.equals(owner)) {
+				iter.remove();
+				this.modCount++;
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries of the given repository and the repository list of its owner
+	 */
+	public synchronized void invalidate(String owner, String repo) {
+		Iterator<Key> iter = this.entries.keySet().iterator();
+		while (iter.hasNext()) {
+			Key key = iter.next();
+			if (key.owner.equals(owner) && (repo.equals(key.repo) || key.kind == Kind.REPOSITORIES)) {
+				iter.remove();
+				this.modCount++;
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		this.entries.clear();
+		this.modCount++;
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+}
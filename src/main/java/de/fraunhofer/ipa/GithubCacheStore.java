@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.XmlFile;
+import hudson.util.XStream2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.egit.github.core.RepositoryBranch;
+import org.eclipse.egit.github.core.User;
+
+/**
+ * Stores the content of a {@link GithubCache} on disk, so that the GitHub
+ * information survives restarts. Only the data needed by the
+ * {@link RepositoryDescriptor}s is written. Files of another format version
+ * are ignored.
+ */
+public class GithubCacheStore {
+
+	/**
+	 * version of the file format, increase on incompatible changes
+	 */
+	static final int VERSION = 1;
+
+	private static final XStream2 XSTREAM = new XStream2();
+	static {
+		XSTREAM.alias("github-cache", Data.class);
+		XSTREAM.alias("entry", StoredEntry.class);
+	}
+
+	private static final class Data {
+		private int version = VERSION;
+		private List<StoredEntry> entries = new ArrayList<StoredEntry>();
+	}
+
+	private static final class StoredEntry {
+		private GithubCache.Kind kind;
+		private String owner;
+		private String repo;
+		private String name;
+		private boolean missing;
+		private long fetched;
+		private String etag;
+		/**
+		 * repository, fork owner or branch names
+		 */
+		private List<String> names;
+		/**
+		 * details of a single repository
+		 */
+		private boolean privateRepo;
+		private boolean fork;
+		private String parentOwner;
+		private String parentName;
+		private String sourceOwner;
+		private String sourceName;
+	}
+
+	private final XmlFile file;
+
+	/**
+	 * modification count of the cache when it was last loaded or saved
+	 */
+	private int savedModCount = -1;
+
+	public GithubCacheStore(File file) {
+		this.file = new XmlFile(XSTREAM, file);
+	}
+
+	/**
+	 * Adds all stored entries to the given cache
+	 */
+	public void load(GithubCache cache) {
+		if (!this.file.exists()) {
+			return;
+		}
+		Data data;
+		try {
+			data = (Data)this.file.read();
+		} catch (IOException ex) {
+			LOGGER.log(Level.WARNING, "Failed to read " + this.file, ex);
+			return;
+		}
+		if (data.version != VERSION || data.entries == null) {
+			LOGGER.log(Level.INFO, "Ignoring " + this.file + " of version " + data.version);
+			return;
+		}
+		for (StoredEntry stored : data.entries) {
+			GithubCache.Key key = new GithubCache.Key(stored.owner, stored.repo, stored.kind, stored.name);
+			cache.restore(key, stored.missing ? null : toValue(stored), stored.fetched, stored.etag);
+		}
+		this.savedModCount = cache.getModCount();
+	}
+
+	/**
+	 * Writes all entries of the given cache if it changed since the last load or save
+	 */
+	public void save(GithubCache cache) throws IOException {
+		int modCount = cache.getModCount();
+		if (modCount == this.savedModCount) {
+			return;
+		}
+		Data data = new Data();
+		for (Map.Entry<GithubCache.Key, GithubCache.Entry> entry : cache.snapshot()) {
+			StoredEntry stored = toStoredEntry(entry.getKey(), entry.getValue());
+			if (stored != null) {
+				data.entries.add(stored);
+			}
+		}
+		this.file.write(data);
+		this.savedModCount = modCount;
+	}
+
+	private static StoredEntry toStoredEntry(GithubCache.Key key, GithubCache.Entry entry) {
+		StoredEntry stored = new StoredEntry();
+		stored.kind = key.getKind();
+		stored.owner = key.getOwner();
+		stored.repo = key.getRepo();
+		stored.name = key.getName();
+		stored.missing = entry.isMissing();
+		stored.fetched = entry.getFetched();
+		stored.etag = entry.getEtag();
+		if (entry.isMissing()) {
+			return stored;
+		}
+
+		switch (key.getKind()) {
+		case REPOSITORIES:
+		case FORKS:
+		case BRANCHES:
+			stored.names = new ArrayList<String>(((NameIndex)entry.getValue()).asList());
+			break;
+		case REPOSITORY:
+			org.eclipse.egit.github.core.Repository repo = (org.eclipse.egit.github.core.Repository)entry.getValue();
+			stored.privateRepo = repo.isPrivate();
+			stored.fork = repo.isFork();
+			if (repo.getParent() != null) {
+				stored.parentOwner = repo.getParent().getOwner().getLogin();
+				stored.parentName = repo.getParent().getName();
+			}
+			if (repo.getSource() != null) {
+				stored.sourceOwner = repo.getSource().getOwner().getLogin();
+				stored.sourceName = repo.getSource().getName();
+			}
+			break;
+		case BRANCH:
+		case USER:
+			// existence is all that is needed
+			break;
+		default:
+			return null;
+		}
+		return stored;
+	}
+
+	private static Object toValue(StoredEntry stored) {
+		switch (stored.kind) {
+		case REPOSITORIES:
+		case FORKS:
+		case BRANCHES:
+			return stored.names == null ? NameIndex.EMPTY : new NameIndex(stored.names);
+		case REPOSITORY:
+			org.eclipse.egit.github.core.Repository repo = createRepository(stored.owner, stored.repo);
+			repo.setPrivate(stored.privateRepo);
+			repo.setFork(stored.fork);
+			if (stored.parentOwner != null) {
+				repo.setParent(createRepository(stored.parentOwner, stored.parentName));
+			}
+			if (stored.sourceOwner != null) {
+				repo.setSource(createRepository(stored.sourceOwner, stored.sourceName));
+			}
+			return repo;
+		case BRANCH:
+			return new RepositoryBranch().setName(stored.name);
+		case USER:
+			return new User().setLogin(stored.owner);
+		default:
+			return null;
+		}
+	}
+
+	private static org.eclipse.egit.github.core.Repository createRepository(String owner, String name) {
+		org.eclipse.egit.github.core.Repository repo = new org.eclipse.egit.github.core.Repository();
+		repo.setOwner(new User().setLogin(owner));
+		repo.setName(name);
+		return repo;
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(GithubCacheStore.class.getName());
+}
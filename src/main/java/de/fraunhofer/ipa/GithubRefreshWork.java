@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Loads the repositories, forks and branches of the pipeline repositories
+ * owner and the GitHub user in the background, so that the comboboxes and
+ * checks of the {@link RepositoryDescriptor}s are answered from the cache.
+ * Runs shortly after startup and then every
+ * {@link CobPipelineProperty.DescriptorImpl#getGithubRefreshInterval()} minutes.
+ * Changes of the cache are written to disk every minute.
+ */
+@Extension
+public class GithubRefreshWork extends AsyncPeriodicWork {
+
+	private volatile long lastRefresh;
+
+	private volatile long lastDuration;
+
+	public GithubRefreshWork() {
+		super("GitHub repository refresh");
+	}
+
+	@Override
+	public long getRecurrencePeriod() {
+		return MIN;
+	}
+
+	@Override
+	public long getInitialDelay() {
+		return TimeUnit.SECONDS.toMillis(30);
+	}
+
+	@Override
+	protected void execute(TaskListener listener) throws IOException, InterruptedException {
+		GithubAccess.get().save();
+
+		CobPipelineProperty.DescriptorImpl desc = Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class);
+		int interval = desc.getGithubRefreshInterval();
+		long start = System.currentTimeMillis();
+		if (interval <= 0 || start - this.lastRefresh < TimeUnit.MINUTES.toMillis(interval)) {
+			return;
+		}
+
+		Set<String> owners = new LinkedHashSet<String>();
+		if (desc.getPipelineReposOwner() != null && desc.getPipelineReposOwner().length() != 0) {
+			owners.add(desc.getPipelineReposOwner());
+		}
+		if (desc.getGithubLogin() != null && desc.getGithubLogin().length() != 0) {
+			owners.add(desc.getGithubLogin());
+		}
+
+		GithubScheduler.Priority previous = GithubScheduler.setPriority(GithubScheduler.Priority.BACKGROUND);
+		try {
+			for (String owner : owners) {
+				listener.getLogger().println("Refreshing repositories of " + owner);
+				GithubAccess.get().refresh(owner);
+			}
+		} catch (GithubScheduler.RequestNotSentException ex) {
+			listener.getLogger().println("Stopped refresh: " + ex.getMessage());
+		} finally {
+			GithubScheduler.setPriority(previous);
+			this.lastRefresh = start;
+			this.lastDuration = System.currentTimeMillis() - start;
+			listener.getLogger().println("Refresh took " + this.lastDuration + "ms");
+		}
+	}
+
+	/**
+	 * Start of the last refresh, null if there was none yet
+	 */
+	public Date getLastRefresh() {
+		return this.lastRefresh == 0 ? null : new Date(this.lastRefresh);
+	}
+
+	/**
+	 * Duration of the last refresh in milliseconds
+	 */
+	public long getLastDuration() {
+		return this.lastDuration;
+	}
+
+	public String getSummary() {
+		if (this.lastRefresh == 0) {
+			return "-";
+		}
+		return getLastRefresh() + " (" + this.lastDuration + "ms)";
+	}
+}
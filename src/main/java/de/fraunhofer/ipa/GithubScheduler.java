@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the requests sent to GitHub with one set of credentials. It keeps
+ * track of the remaining quota reported in the X-RateLimit headers, shapes
+ * the requests with a token bucket and lets interactive requests pass before
+ * background requests. Once the quota is used up, requests fail immediately
+ * with a {@link RateLimitExceededException} until the quota is reset. Requests
+ * which do not get a token in time fail with a {@link ThrottledException}.
+ */
+public class GithubScheduler {
+
+	/**
+	 * Priority of the requests sent by the current thread
+	 */
+	public enum Priority {
+		INTERACTIVE, BACKGROUND
+	}
+
+	/**
+	 * Thrown if the scheduler does not let a request pass to GitHub
+	 */
+	public static class RequestNotSentException extends IOException {
+		public RequestNotSentException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Thrown if a request is not sent because the GitHub quota is used up
+	 */
+	public static class RateLimitExceededException extends RequestNotSentException {
+		private final long reset;
+
+		public RateLimitExceededException(String message, long reset) {
+			super(message);
+			this.reset = reset;
+		}
+
+		/**
+		 * Time in milliseconds when the quota is expected to be reset
+		 */
+		public long getReset() {
+			return this.reset;
+		}
+	}
+
+	/**
+	 * Thrown if a request is not sent because no token became available in
+	 * time, although the GitHub quota is not used up
+	 */
+	public static class ThrottledException extends RequestNotSentException {
+		public ThrottledException(String message) {
+			super(message);
+		}
+	}
+
+	private static final ConcurrentMap<String, GithubScheduler> SCHEDULERS = new ConcurrentHashMap<String, GithubScheduler>();
+
+	private static final ThreadLocal<Priority> PRIORITY = new ThreadLocal<Priority>() {
+		@Override
+		protected Priority initialValue() {
+			return Priority.INTERACTIVE;
+		}
+	};
+
+	/**
+	 * Returns the scheduler for the given GitHub login, null or empty for anonymous requests
+	 */
+	public static GithubScheduler forLogin(String login) {
+		String key = login == null ? "" : login;
+		GithubScheduler scheduler = SCHEDULERS.get(key);
+		if (scheduler == null) {
+			GithubScheduler created = new GithubScheduler(
+					Integer.getInteger(GithubScheduler.class.getName() + ".burst", 10),
+					Integer.getInteger(GithubScheduler.class.getName() + ".requestsPerSecond", 5),
+					Integer.getInteger(GithubScheduler.class.getName() + ".backgroundReserve", 500),
+					TimeUnit.SECONDS.toMillis(Integer.getInteger(GithubScheduler.class.getName() + ".maxWait", 10)));
+			scheduler = SCHEDULERS.putIfAbsent(key, created);
+			if (scheduler == null) {
+				scheduler = created;
+			}
+		}
+		return scheduler;
+	}
+
+	public static Priority getPriority() {
+		return PRIORITY.get();
+	}
+
+	/**
+	 * Sets the priority of the requests of the current thread and returns the previous one
+	 */
+	public static Priority setPriority(Priority priority) {
+		Priority previous = PRIORITY.get();
+		PRIORITY.set(priority);
+		return previous;
+	}
+
+	private final int burst;
+
+	private final double tokensPerMilli;
+
+	private final int backgroundReserve;
+
+	private final long maxWait;
+
+	private double tokens;
+
+	private long lastRefill;
+
+	private int waitingInteractive;
+
+	/**
+	 * quota as reported by GitHub, -1 as long as it is unknown
+	 */
+	private int limit = -1;
+
+	private int remaining = -1;
+
+	private long reset;
+
+	/**
+	 * current backoff if GitHub refused a request without telling when the quota is reset
+	 */
+	private long backoff;
+
+	public GithubScheduler(int burst, int requestsPerSecond, int backgroundReserve, long maxWait) {
+		this.burst = burst;
+		this.tokensPerMilli = requestsPerSecond / 1000.0;
+		this.backgroundReserve = backgroundReserve;
+		this.maxWait = maxWait;
+		this.tokens = burst;
+		this.lastRefill = currentTimeMillis();
+	}
+
+	/**
+	 * Returns the current time in milliseconds, overridden by tests
+	 */
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Waits for a change of the quota or tokens, overridden by tests
+	 */
+	void await(long millis) throws InterruptedException {
+		wait(millis);
+	}
+
+	/**
+	 * Blocks until the current thread may send a request to GitHub
+	 * @throws RateLimitExceededException if the quota is used up
+	 * @throws ThrottledException if no token becomes available in time
+	 */
+	public void acquire() throws IOException {
+		Priority priority = getPriority();
+		long deadline = currentTimeMillis() + this.maxWait;
+
+		synchronized (this) {
+			if (priority == Priority.INTERACTIVE) {
+				this.waitingInteractive++;
+			}
+			try {
+				while (true) {
+					long now = currentTimeMillis();
+					checkQuota(priority, now);
+					refill(now);
+					if (this.tokens >= 1 && (priority == Priority.INTERACTIVE || this.waitingInteractive == 0)) {
+						this.tokens--;
+						if (this.remaining > 0) {
+							this.remaining--;
+						}
+						return;
+					}
+					if (now >= deadline) {
+						throw new ThrottledException("No GitHub request slot available within " + this.maxWait + "ms");
+					}
+					long next = (long)Math.ceil((1 - this.tokens) / this.tokensPerMilli);
+					await(Math.max(1, Math.min(next, deadline - now)));
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw (IOException)new InterruptedIOException("Interrupted while waiting for GitHub").initCause(ex);
+			} finally {
+				if (priority == Priority.INTERACTIVE) {
+					this.waitingInteractive--;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	private void checkQuota(Priority priority, long now) throws RateLimitExceededException {
+		if (this.remaining < 0) {
+			return;
+		}
+		if (now >= this.reset) {
+			// new time window, wait for GitHub to report the new quota
+			this.remaining = -1;
+			return;
+		}
+		int reserve = priority == Priority.BACKGROUND ? Math.min(this.backgroundReserve, this.limit / 4) : 0;
+		if (this.remaining <= reserve) {
+			throw new RateLimitExceededException("GitHub rate limit exceeded until " + new Date(this.reset), this.reset);
+		}
+	}
+
+	private void refill(long now) {
+		this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefill) * this.tokensPerMilli);
+		this.lastRefill = now;
+	}
+
+	/**
+	 * Updates the quota with the values of the X-RateLimit headers of a response
+	 * @param reset time in milliseconds when the quota is reset, 0 if unknown
+	 */
+	public synchronized void update(int limit, int remaining, long reset) {
+		if (limit >= 0) {
+			this.limit = limit;
+		}
+		if (remaining >= 0 && reset > 0) {
+			this.remaining = remaining;
+			this.reset = reset;
+			this.backoff = 0;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Called if GitHub refused a request because of the rate limit. Keeps the
+	 * reset reported with the quota of this login if it is still ahead.
+	 */
+	public synchronized void exhausted() {
+		long now = currentTimeMillis();
+		if (this.reset <= now) {
+			// reset unknown, back off exponentially
+			this.backoff = this.backoff == 0 ? TimeUnit.MINUTES.toMillis(1) : Math.min(2*this.backoff, TimeUnit.HOURS.toMillis(1));
+			this.reset = now + this.backoff;
+		}
+		this.remaining = 0;
+	}
+
+	public synchronized int getLimit() {
+		return this.limit;
+	}
+
+	public synchronized int getRemaining() {
+		return this.remaining;
+	}
+
+	public synchronized long getReset() {
+		return this.reset;
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.csrf.CrumbExclusion;
+import hudson.util.Secret;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Receives GitHub webhook events and updates the cached repository
+ * information of {@link GithubAccess} accordingly, so that new and deleted
+ * branches, forks and repositories are known before their cache entries expire.
+ * 
+ * Listens on <tt>JENKINS_URL/cob-pipeline-github-webhook/</tt> for the
+ * events push, create, delete, fork and repository. Payloads are only
+ * accepted if they are signed with
+ * {@link CobPipelineProperty.DescriptorImpl#getGithubWebhookSecret()}.
+ */
+@Extension
+public class GithubWebhook implements UnprotectedRootAction {
+
+	public static final String URL_NAME = "cob-pipeline-github-webhook";
+
+	private static final Logger LOGGER = Logger.getLogger(GithubWebhook.class.getName());
+
+	private static final String BRANCH_PREFIX = "refs/heads/";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public String getIconFileName() {
+		return null;
+	}
+
+	public String getDisplayName() {
+		return null;
+	}
+
+	public String getUrlName() {
+		return URL_NAME;
+	}
+
+	public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		if (!"POST".equals(req.getMethod())) {
+			rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+		String secret = Secret.toString(Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getGithubWebhookSecret());
+		if (secret == null || secret.length() == 0) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No webhook secret configured");
+			return;
+		}
+
+		byte[] body = IOUtils.toByteArray(req.getInputStream());
+		if (!isSigned(body, secret, req.getHeader("X-Hub-Signature-256"), req.getHeader("X-Hub-Signature"))) {
+			rsp.sendError(HttpServletResponse.SC_FORBIDDEN, "Invalid signature");
+			return;
+		}
+
+		String event = req.getHeader("X-GitHub-Event");
+		try {
+			handle(event, JSONObject.fromObject(getPayload(body, req.getContentType())));
+		} catch (JSONException ex) {
+			rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid payload: " + ex.getMessage());
+			return;
+		}
+		rsp.setContentType("text/plain;charset=UTF-8");
+		rsp.getWriter().println("ok");
+	}
+
+	/**
+	 * Checks the HMAC of the body, preferring SHA-256 over SHA-1
+	 */
+	static boolean isSigned(byte[] body, String secret, String sha256, String sha1) {
+		try {
+			if (sha256 != null) {
+				return matches(body, secret, "HmacSHA256", "sha256=", sha256);
+			}
+			if (sha1 != null) {
+				return matches(body, secret, "HmacSHA1", "sha1=", sha1);
+			}
+		} catch (GeneralSecurityException ex) {
+			LOGGER.log(Level.WARNING, "Failed to verify webhook signature", ex);
+		}
+		return false;
+	}
+
+	private static boolean matches(byte[] body, String secret, String algorithm, String prefix, String signature)
+			throws GeneralSecurityException {
+		if (!signature.startsWith(prefix)) {
+			return false;
+		}
+		Mac mac = Mac.getInstance(algorithm);
+		mac.init(new SecretKeySpec(secret.getBytes(UTF8), algorithm));
+		String expected = prefix + Util.toHexString(mac.doFinal(body));
+		// constant time comparison
+		return MessageDigest.isEqual(expected.getBytes(UTF8), signature.toLowerCase().getBytes(UTF8));
+	}
+
+	/**
+	 * Returns the JSON payload, which GitHub sends either as body or as form parameter
+	 */
+	private static String getPayload(byte[] body, String contentType) throws IOException {
+		String text = new String(body, UTF8);
+		if (contentType == null || !contentType.startsWith("application/x-www-form-urlencoded")) {
+			return text;
+		}
+		for (String param : text.split("&")) {
+			if (param.startsWith("payload=")) {
+				return URLDecoder.decode(param.substring("payload=".length()), "UTF-8");
+			}
+		}
+		throw new JSONException("No payload parameter");
+	}
+
+	/**
+	 * Updates the cache according to the given event
+	 */
+	void handle(String event, JSONObject payload) {
+		JSONObject repository = payload.optJSONObject("repository");
+		if (event == null || repository == null || repository.isNullObject()) {
+			return;
+		}
+		String owner = getOwner(repository);
+		String name = repository.optString("name");
+		LOGGER.log(Level.FINE, "Received {0} event of {1}/{2}", new Object[] { event, owner, name });
+		GithubAccess github = GithubAccess.get();
+
+		if (event.equals("push")) {
+			String ref = payload.optString("ref");
+			if (ref.startsWith(BRANCH_PREFIX)) {
+				String branch = ref.substring(BRANCH_PREFIX.length());
+				if (payload.optBoolean("created")) {
+					github.branchChanged(owner, name, branch, true);
+				} else if (payload.optBoolean("deleted")) {
+					github.branchChanged(owner, name, branch, false);
+				}
+			}
+		} else if (event.equals("create") || event.equals("delete")) {
+			if ("branch".equals(payload.optString("ref_type"))) {
+				github.branchChanged(owner, name, payload.optString("ref"), event.equals("create"));
+			}
+		} else if (event.equals("fork")) {
+			JSONObject forkee = payload.optJSONObject("forkee");
+			if (forkee != null && !forkee.isNullObject()) {
+				github.forkCreated(owner, name, getOwner(forkee), forkee.optString("name"));
+			}
+		} else if (event.equals("repository")) {
+			github.repositoryChanged(owner, name);
+			// a renamed repository is still cached under its old name
+			JSONObject changes = payload.optJSONObject("changes");
+			if (changes != null && changes.optJSONObject("repository") != null) {
+				JSONObject oldName = changes.getJSONObject("repository").optJSONObject("name");
+				if (oldName != null && oldName.optString("from").length() > 0) {
+					github.repositoryChanged(owner, oldName.optString("from"));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the owner login, push events of older payload versions only have its name
+	 */
+	private static String getOwner(JSONObject repository) {
+		JSONObject owner = repository.getJSONObject("owner");
+		return owner.has("login") ? owner.getString("login") : owner.optString("name");
+	}
+
+	/**
+	 * GitHub can not send a crumb, the payload signature is checked instead
+	 */
+	@Extension
+	public static class CrumbExclusionImpl extends CrumbExclusion {
+		@Override
+		public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain)
+				throws IOException, ServletException {
+			String pathInfo = req.getPathInfo();
+			if (pathInfo != null && (pathInfo.equals("/" + URL_NAME) || pathInfo.startsWith("/" + URL_NAME + "/"))) {
+				chain.doFilter(req, resp);
+				return true;
+			}
+			return false;
+		}
+	}
+}
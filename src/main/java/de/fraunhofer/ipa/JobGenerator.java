@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.Util;
+import hudson.model.AbstractItem;
+import hudson.model.TopLevelItem;
+import hudson.security.ACL;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.transform.stream.StreamSource;
+
+import jenkins.model.Jenkins;
+
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Creates and updates the jobs of a user's pipeline directly in this Jenkins,
+ * instead of running generate_buildpipeline.py which logs into Jenkins over
+ * HTTP and posts every job on its own.
+ * 
+ * The config.xml of each job is read from <tt>TEMPLATES/&lt;job&gt;.xml</tt>,
+ * e.g. <tt>regular_build.xml</tt>, where <tt>${NAME}</tt> is replaced by the
+ * values of {@link #getVariables(CobPipelineProperty, RootRepository, PipelineJob)}.
+ * A job without template fails the generation.
+ * Jobs are named <tt>&lt;user&gt;__&lt;repository full name&gt;__&lt;job&gt;</tt>
+ * and are written by up to <tt>de.fraunhofer.ipa.JobGenerator.threads</tt>
+ * (4 by default) threads at the same time.
+ */
+public class JobGenerator {
+
+	private static final int THREADS = Integer.getInteger(JobGenerator.class.getName() + ".threads", 4);
+
+	private final File templateDir;
+
+	private final String userId;
+
+	public JobGenerator(File templateDir, String userId) {
+		this.templateDir = templateDir;
+		this.userId = userId;
+	}
+
+	/**
+	 * Generates the jobs of the given repositories and deletes the jobs of the removed ones
+	 * @param repos repositories to create or update the jobs of
+	 * @param removed full names of repositories to delete the jobs of
+	 * @return one line per created, updated or deleted job
+	 * @throws IOException listing all jobs which could not be written, after all others were written
+	 */
+	public String generate(final CobPipelineProperty property, Collection<RootRepository> repos, Collection<String> removed) throws IOException, InterruptedException {
+		Map<PipelineJob, String> templates = loadTemplates();
+		List<String> log = new ArrayList<String>();
+		List<String> errors = new ArrayList<String>();
+		List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+
+		for (final RootRepository repo : repos) {
+			for (final PipelineJob job : PipelineJob.values()) {
+				final String name = getJobName(repo.getFullName(), job);
+				if (!repo.getPipelineJobs().contains(job)) {
+					tasks.add(delete(name));
+					continue;
+				}
+				final String template = templates.get(job);
+				if (template == null) {
+					// the job would not exist although the repository is recorded as generated
+					errors.add("No template for " + job.getJobName() + " in " + templateDir);
+					continue;
+				}
+				tasks.add(new Callable<String>() {
+					public String call() throws IOException {
+						return write(name, expand(template, getVariables(property, repo, job)));
+					}
+				});
+			}
+		}
+		for (String fullName : removed) {
+			for (PipelineJob job : PipelineJob.values()) {
+				tasks.add(delete(getJobName(fullName, job)));
+			}
+		}
+
+		if (!tasks.isEmpty()) {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREADS, tasks.size()));
+			try {
+				for (Future<String> result : executor.invokeAll(tasks)) {
+					try {
+						String line = result.get();
+						if (line != null) {
+							log.add(line);
+						}
+					} catch (ExecutionException ex) {
+						LOGGER.log(Level.WARNING, "Failed to generate job", ex.getCause());
+						errors.add(ex.getCause().getMessage());
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		if (!errors.isEmpty()) {
+			throw new IOException(StringUtils.join(errors, "\n"));
+		}
+		return StringUtils.join(log, "\n");
+	}
+
+	public String getJobName(String fullName, PipelineJob job) {
+		return userId + "__" + fullName + "__" + job.getJobName();
+	}
+
+	/**
+	 * @return values of the template variables of the given job
+	 */
+	public Map<String, String> getVariables(CobPipelineProperty property, RootRepository repo, PipelineJob job) {
+		List<String> deps = new ArrayList<String>();
+		for (Repository dep : Util.fixNull(repo.getRepoDeps())) {
+			deps.add(dep.name);
+		}
+		List<String> matrix = new ArrayList<String>();
+		for (Map.Entry<String, List<String>> entry : repo.getMatrixDistroArch().entrySet()) {
+			for (String arch : entry.getValue()) {
+				matrix.add(entry.getKey() + ":" + arch);
+			}
+		}
+
+		Map<String, String> vars = new LinkedHashMap<String, String>();
+		vars.put("USER_NAME", userId);
+		vars.put("EMAIL", property.getEmail());
+		vars.put("COMMITTER_EMAIL_ENABLED", String.valueOf(property.getCommitterEmailEnabled()));
+		vars.put("JOB", job.getJobName());
+		vars.put("PIPELINE", userId + "__" + repo.getFullName());
+		vars.put("REPOSITORY", repo.getFullName());
+		vars.put("REPOSITORY_NAME", repo.getRepoName());
+		vars.put("REPOSITORY_URL", repo.url);
+		vars.put("FORK", repo.fork);
+		vars.put("BRANCH", repo.branch);
+		vars.put("ROS_DISTROS", StringUtils.join(repo.getRosDistro(), ","));
+		vars.put("PRIO_UBUNTU_DISTRO", repo.getPrioUbuntuDistro());
+		vars.put("PRIO_ARCH", repo.getPrioArch());
+		vars.put("MATRIX", StringUtils.join(matrix, ","));
+		vars.put("ROBOT", repo.getRobot());
+		vars.put("DEPENDENCIES", StringUtils.join(deps, ","));
+		return vars;
+	}
+
+	private Map<PipelineJob, String> loadTemplates() throws IOException {
+		Map<PipelineJob, String> templates = new EnumMap<PipelineJob, String>(PipelineJob.class);
+		for (PipelineJob job : PipelineJob.values()) {
+			File file = new File(templateDir, job.getJobName() + ".xml");
+			if (file.isFile()) {
+				templates.put(job, FileUtils.readFileToString(file, "UTF-8"));
+			}
+		}
+		return templates;
+	}
+
+	private static String expand(String template, Map<String, String> vars) {
+		String result = template;
+		for (Map.Entry<String, String> var : vars.entrySet()) {
+			result = result.replace("${" + var.getKey() + "}", Util.xmlEscape(Util.fixNull(var.getValue())));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the job or updates its configuration
+	 */
+	private String write(String name, String config) throws IOException {
+		SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+		try {
+			Jenkins jenkins = Jenkins.getInstance();
+			TopLevelItem item = jenkins.getItem(name);
+			if (item == null) {
+				jenkins.createProjectFromXML(name, new ByteArrayInputStream(config.getBytes("UTF-8")));
+				return "Created " + name;
+			}
+			if (!(item instanceof AbstractItem)) {
+				throw new IOException("Cannot update " + name);
+			}
+			((AbstractItem) item).updateByXml(new StreamSource(new StringReader(config)));
+			return "Updated " + name;
+		} finally {
+			SecurityContextHolder.setContext(old);
+		}
+	}
+
+	private Callable<String> delete(final String name) {
+		return new Callable<String>() {
+			public String call() throws IOException, InterruptedException {
+				SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+				try {
+					TopLevelItem item = Jenkins.getInstance().getItem(name);
+					if (item == null) {
+						return null;
+					}
+					item.delete();
+					return "Deleted " + name;
+				} finally {
+					SecurityContextHolder.setContext(old);
+				}
+			}
+		};
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(JobGenerator.class.getName());
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable, sorted and duplicate free list of names, e.g. repository or
+ * branch names, with constant time membership checks and case insensitive
+ * prefix search.
+ */
+public final class NameIndex implements Iterable<String> {
+
+	private static final Comparator<String> LOWER_CASE_ORDER = new Comparator<String>() {
+		public int compare(String a, String b) {
+			return a.toLowerCase(Locale.ENGLISH).compareTo(b.toLowerCase(Locale.ENGLISH));
+		}
+	};
+
+	public static final NameIndex EMPTY = new NameIndex(Collections.<String>emptySet());
+
+	private final List<String> sorted;
+
+	private final Set<String> names;
+
+	/**
+	 * lower case names in alphabetical order for the prefix search
+	 */
+	private final String[] lowerCase;
+
+	/**
+	 * names in the order of {@link #lowerCase}
+	 */
+	private final String[] byLowerCase;
+
+	public NameIndex(Collection<String> names) {
+		this.names = Collections.unmodifiableSet(new HashSet<String>(names));
+		List<String> aux = new ArrayList<String>(this.names);
+		Collections.sort(aux);
+		this.sorted = Collections.unmodifiableList(aux);
+
+		Collections.sort(aux, LOWER_CASE_ORDER);
+		this.byLowerCase = aux.toArray(new String[aux.size()]);
+		this.lowerCase = new String[this.byLowerCase.length];
+		for (int i = 0; i < this.byLowerCase.length; i++) {
+			this.lowerCase[i] = this.byLowerCase[i].toLowerCase(Locale.ENGLISH);
+		}
+	}
+
+	public boolean contains(String name) {
+		return this.names.contains(name);
+	}
+
+	public boolean isEmpty() {
+		return this.sorted.isEmpty();
+	}
+
+	public int size() {
+		return this.sorted.size();
+	}
+
+	/**
+	 * Returns all names in alphabetical order
+	 */
+	public List<String> asList() {
+		return this.sorted;
+	}
+
+	/**
+	 * Returns the number of names starting with the given prefix, ignoring case
+	 */
+	public int countStartingWith(String prefix) {
+		String lower = prefix.toLowerCase(Locale.ENGLISH);
+		return lowerBound(lower + Character.MAX_VALUE) - lowerBound(lower);
+	}
+
+	/**
+	 * Returns a page of the names starting with the given prefix, ignoring case
+	 * @param offset number of matching names to skip
+	 * @param limit maximal number of names to return
+	 */
+	public List<String> startingWith(String prefix, int offset, int limit) {
+		String lower = prefix.toLowerCase(Locale.ENGLISH);
+		List<String> matches = new ArrayList<String>(Math.min(Math.max(limit, 0), 100));
+		for (int i = lowerBound(lower) + Math.max(offset, 0); i < this.lowerCase.length && matches.size() < limit; i++) {
+			if (!this.lowerCase[i].startsWith(lower)) {
+				break;
+			}
+			matches.add(this.byLowerCase[i]);
+		}
+		return matches;
+	}
+
+	/**
+	 * Returns the index of the first lower case name not less than the given key
+	 */
+	private int lowerBound(String key) {
+		int low = 0;
+		int high = this.lowerCase.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.lowerCase[mid].compareTo(key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	public Iterator<String> iterator() {
+		return this.sorted.iterator();
+	}
+
+	@Override
+	public String toString() {
+		return this.sorted.toString();
+	}
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.Util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Runs the pipeline generations of the users in the background, so the
+ * configuration page gets a {@link Ticket} right away instead of holding a
+ * request thread until the jobs are generated. A request of a user who
+ * already has a generation waiting in the queue is merged into that one.
+ * The generations of one user never run at the same time: a request made
+ * while the user's generation runs waits until that one is done.
+ * 
+ * The number of generations running at the same time and the number of
+ * waiting ones are limited by <tt>de.fraunhofer.ipa.PipelineGenerator.threads</tt>
+ * (2 by default) and <tt>de.fraunhofer.ipa.PipelineGenerator.queueSize</tt>
+ * (50 by default).
+ */
+public final class PipelineGenerator {
+
+	private static final PipelineGenerator INSTANCE = new PipelineGenerator();
+
+	private static final int THREADS = Integer.getInteger(PipelineGenerator.class.getName() + ".threads", 2);
+
+	private static final int QUEUE_SIZE = Integer.getInteger(PipelineGenerator.class.getName() + ".queueSize", 50);
+
+	/**
+	 * number of finished tickets which are kept to be polled and shown
+	 */
+	private static final int HISTORY = 20;
+
+	public static PipelineGenerator get() {
+		return INSTANCE;
+	}
+
+	private final AtomicLong nextId = new AtomicLong();
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * tickets not started yet by user id
+	 */
+	private final Map<String, Ticket> waiting = new HashMap<String, Ticket>();
+
+	/**
+	 * tickets running by user id
+	 */
+	private final Map<String, Ticket> running = new HashMap<String, Ticket>();
+
+	/**
+	 * configurations of the waiting tickets which are queued once the
+	 * running generation of their user is done
+	 */
+	private final Map<String, CobPipelineProperty> deferred = new HashMap<String, CobPipelineProperty>();
+
+	/**
+	 * all known tickets by id in order of submission
+	 */
+	private final Map<String, Ticket> tickets = new LinkedHashMap<String, Ticket>();
+
+	private PipelineGenerator() {
+		executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Pipeline generation " + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queues the generation of the given user's pipeline
+	 * @param rootUrl URL of this Jenkins as seen by the request
+	 * @param saveId id of the submitted configuration to wait for, null if there is none
+	 * @param force generate even if nothing changed since the last generation
+	 * @return the ticket to follow the generation, the one already waiting if there is any
+	 */
+	public synchronized Ticket submit(String userId, CobPipelineProperty property, String rootUrl, String saveId, boolean force) {
+		Ticket pending = waiting.get(userId);
+		if (pending != null) {
+			if (saveId != null) {
+				pending.setSaveId(saveId);
+			}
+			if (force) {
+				pending.force();
+			}
+			return pending;
+		}
+
+		Ticket ticket = new Ticket(Long.toString(nextId.incrementAndGet()), userId, rootUrl);
+		ticket.setSaveId(saveId);
+		if (force) {
+			ticket.force();
+		}
+		tickets.put(ticket.getId(), ticket);
+		waiting.put(userId, ticket);
+		if (running.containsKey(userId)) {
+			// queued once the running generation is done
+			deferred.put(userId, property);
+		} else {
+			execute(ticket, property);
+		}
+		return ticket;
+	}
+
+	private synchronized void execute(final Ticket ticket, final CobPipelineProperty property) {
+		final String userId = ticket.getUserId();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					synchronized (PipelineGenerator.this) {
+						waiting.remove(userId);
+						running.put(userId, ticket);
+					}
+					ticket.start();
+					try {
+						ticket.finish(property.generatePipeline(ticket));
+					} catch (Throwable ex) {
+						LOGGER.log(Level.WARNING, "Failed to generate pipeline of " + userId, ex);
+						ticket.fail(ex.getMessage() != null ? ex.getMessage() : ex.toString());
+					} finally {
+						done(ticket);
+					}
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			waiting.remove(userId);
+			ticket.fail(Messages.Pipeline_GenerationQueueFull());
+			retire();
+		}
+	}
+
+	/**
+	 * Queues the generation the user requested while the given one was running
+	 */
+	private synchronized void done(Ticket ticket) {
+		running.remove(ticket.getUserId());
+		CobPipelineProperty property = deferred.remove(ticket.getUserId());
+		if (property != null) {
+			execute(waiting.get(ticket.getUserId()), property);
+		}
+		retire();
+	}
+
+	/**
+	 * @return the ticket of the given id or null if it is unknown or too old
+	 */
+	public synchronized Ticket getTicket(String id) {
+		return tickets.get(id);
+	}
+
+	/**
+	 * @return all known tickets, latest first
+	 */
+	public synchronized List<Ticket> getTickets() {
+		List<Ticket> result = new ArrayList<Ticket>(tickets.values());
+		Collections.reverse(result);
+		return result;
+	}
+
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	public int getRunning() {
+		return executor.getActiveCount();
+	}
+
+	public String getSummary() {
+		return getRunning() + " running, " + getQueueDepth() + " waiting";
+	}
+
+	/**
+	 * Forgets the oldest finished tickets
+	 */
+	private synchronized void retire() {
+		int finished = 0;
+		for (Ticket ticket : tickets.values()) {
+			if (ticket.isDone()) {
+				finished++;
+			}
+		}
+		for (Iterator<Ticket> it = tickets.values().iterator(); finished > HISTORY && it.hasNext();) {
+			if (it.next().isDone()) {
+				it.remove();
+				finished--;
+			}
+		}
+	}
+
+	/**
+	 * One requested generation, its current phase, the time spent in each
+	 * phase and finally the result
+	 */
+	public static final class Ticket {
+
+		public enum State { QUEUED, RUNNING, DONE }
+
+		private final String id;
+		private final String userId;
+		private final String rootUrl;
+		private final long submitted = System.currentTimeMillis();
+		private long started;
+		private long finished;
+		private State state = State.QUEUED;
+		private String phase;
+		private long phaseStart;
+		private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+		private JSONObject result;
+		private volatile boolean force;
+		private volatile String saveId;
+
+		Ticket(String id, String userId, String rootUrl) {
+			this.id = id;
+			this.userId = userId;
+			this.rootUrl = rootUrl;
+		}
+
+		void force() {
+			this.force = true;
+		}
+
+		void setSaveId(String saveId) {
+			this.saveId = saveId;
+		}
+
+		/**
+		 * @return id of the latest submitted configuration to wait for, null if there is none
+		 */
+		public String getSaveId() {
+			return saveId;
+		}
+
+		/**
+		 * @return whether the generation has to run even if nothing changed
+		 */
+		public boolean isForce() {
+			return force;
+		}
+
+		synchronized void start() {
+			this.state = State.RUNNING;
+			this.started = System.currentTimeMillis();
+		}
+
+		/**
+		 * Ends the current phase and begins the given one
+		 */
+		public synchronized void phase(String name) {
+			long now = System.currentTimeMillis();
+			if (this.phase != null) {
+				this.phases.put(this.phase, now - this.phaseStart);
+			}
+			this.phase = name;
+			this.phaseStart = now;
+		}
+
+		synchronized void finish(JSONObject result) {
+			phase(null);
+			this.result = result;
+			this.state = State.DONE;
+			this.finished = System.currentTimeMillis();
+		}
+
+		synchronized void fail(String message) {
+			JSONObject response = new JSONObject();
+			response.put("message", message);
+			response.put("status", "<font color=\"red\">" + Messages.Pipeline_GenerationFailure() + "</font>");
+			finish(response);
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getUserId() {
+			return userId;
+		}
+
+		/**
+		 * @return URL of this Jenkins when the generation was requested
+		 */
+		public String getRootUrl() {
+			return rootUrl;
+		}
+
+		public synchronized State getState() {
+			return state;
+		}
+
+		public synchronized boolean isDone() {
+			return state == State.DONE;
+		}
+
+		public synchronized String getPhase() {
+			return phase;
+		}
+
+		public Date getSubmitted() {
+			return new Date(submitted);
+		}
+
+		/**
+		 * @return milliseconds spent in each finished phase
+		 */
+		public synchronized Map<String, Long> getPhases() {
+			return new LinkedHashMap<String, Long>(phases);
+		}
+
+		/**
+		 * @return {status, message} of the generation once it is done
+		 */
+		public synchronized JSONObject getResult() {
+			return result;
+		}
+
+		public synchronized String getSummary() {
+			StringBuilder summary = new StringBuilder(state.toString());
+			if (state == State.QUEUED) {
+				summary.append(" for ").append(Util.getTimeSpanString(System.currentTimeMillis() - submitted));
+			} else {
+				summary.append(" after ").append(started - submitted).append("ms in queue");
+			}
+			for (Map.Entry<String, Long> entry : phases.entrySet()) {
+				summary.append(", ").append(entry.getKey()).append(": ").append(entry.getValue()).append("ms");
+			}
+			if (state == State.RUNNING) {
+				summary.append(", ").append(phase).append("...");
+			} else if (state == State.DONE) {
+				summary.append(", total ").append(finished - submitted).append("ms");
+			}
+			return summary.toString();
+		}
+
+		public synchronized JSONObject toJSON() {
+			JSONObject json = new JSONObject();
+			json.put("id", id);
+			json.put("state", state.toString());
+			json.put("done", state == State.DONE);
+			if (state == State.DONE) {
+				json.put("status", result.get("status"));
+				json.put("message", result.get("message"));
+			} else if (state == State.QUEUED) {
+				json.put("status", Messages.Pipeline_GenerationQueued());
+			} else {
+				json.put("status", Messages.Pipeline_GenerationRunning(phase));
+			}
+			return json;
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(PipelineGenerator.class.getName());
+}
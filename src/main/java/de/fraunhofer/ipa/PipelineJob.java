@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Jobs a pipeline of a {@link RootRepository} can consist of, in the order
+ * they are listed in the pipeline configuration
+ */
+public enum PipelineJob {
+	REGULAR_BUILD("regular_build", "regularBuild"),
+	DOWNSTREAM_BUILD("downstream_build", "downstreamBuild"),
+	NONGRAPHICS_TEST("nongraphics_test", "nongraphicsTest"),
+	GRAPHICS_TEST("graphics_test", "graphicsTest"),
+	HARDWARE_BUILD("hardware_build", "hardwareBuild"),
+	AUTOMATIC_HW_TEST("automatic_hw_test", "automaticHwTest"),
+	INTERACTIVE_HW_TEST("interactive_hw_test", "interactiveHwTest"),
+	RELEASE("release", "release");
+
+	private static final Map<String, PipelineJob> BY_NAME = new HashMap<String, PipelineJob>();
+	private static final Map<String, PipelineJob> BY_FORM_KEY = new HashMap<String, PipelineJob>();
+
+	static {
+		for (PipelineJob job : values()) {
+			BY_NAME.put(job.jobName, job);
+			BY_FORM_KEY.put(job.formKey, job);
+		}
+	}
+
+	private final String jobName;
+	private final String formKey;
+
+	private PipelineJob(String jobName, String formKey) {
+		this.jobName = jobName;
+		this.formKey = formKey;
+	}
+
+	/**
+	 * @return name of the job in the pipeline configuration
+	 */
+	public String getJobName() {
+		return jobName;
+	}
+
+	/**
+	 * @return name of the job's field in the configuration form
+	 */
+	public String getFormKey() {
+		return formKey;
+	}
+
+	/**
+	 * @return job of the given pipeline configuration name or null
+	 */
+	public static PipelineJob fromJobName(String jobName) {
+		return BY_NAME.get(jobName);
+	}
+
+	/**
+	 * @return job of the given form field or null
+	 */
+	public static PipelineJob fromFormKey(String formKey) {
+		return BY_FORM_KEY.get(formKey);
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.FormValidation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Validates all repositories and dependencies of a pipeline at once. The
+ * checks run in parallel on a bounded executor, identical checks are only
+ * executed once.
+ */
+public class PipelineValidator {
+
+	private static final ThreadPoolExecutor EXECUTOR;
+	static {
+		int threads = Integer.getInteger(PipelineValidator.class.getName() + ".threads", 8);
+		EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+		EXECUTOR.allowCoreThreadTimeOut(true);
+	}
+
+	private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(Integer.getInteger(PipelineValidator.class.getName() + ".timeout", 60));
+
+	/**
+	 * running checks by check type and arguments
+	 */
+	private final Map<String, Future<FormValidation>> checks = new LinkedHashMap<String, Future<FormValidation>>();
+
+	/**
+	 * checks by id of the validated field
+	 */
+	private final Map<String, Future<FormValidation>> fields = new LinkedHashMap<String, Future<FormValidation>>();
+
+	private final RepositoryDescriptor rootDescriptor;
+
+	private final RepositoryDescriptor depDescriptor;
+
+	public PipelineValidator() {
+		this.rootDescriptor = Jenkins.getInstance().getDescriptorByType(RootRepository.DescriptorImpl.class);
+		this.depDescriptor = Jenkins.getInstance().getDescriptorByType(Repository.DescriptorImpl.class);
+	}
+
+	/**
+	 * Adds the checks of the name, fork and branch of a root repository
+	 * @param id prefix of the field ids
+	 */
+	public void addRootRepository(String id, final String repoName, final String fork, final String branch) {
+		submit(id + "repoName", "name:" + fork + "/" + repoName, new Callable<FormValidation>() {
+			public FormValidation call() {
+				return toFormValidation(rootDescriptor.checkName(repoName, fork));
+			}
+		});
+		submit(id + "fork", "fork:" + fork + "/" + repoName, new Callable<FormValidation>() {
+			public FormValidation call() {
+				return toFormValidation(rootDescriptor.checkFork(fork, repoName));
+			}
+		});
+		submit(id + "branch", "branch:" + fork + "/" + repoName + "#" + branch, new Callable<FormValidation>() {
+			public FormValidation call() {
+				return toFormValidation(rootDescriptor.checkBranch(branch, fork, repoName));
+			}
+		});
+	}
+
+	/**
+	 * Adds the checks of the name, fork and branch of a dependency
+	 * @param id prefix of the field ids
+	 */
+	public void addDependency(String id, final String depName, final String fork, final String branch) {
+		submit(id + "depName", "depName:" + fork + "/" + depName, new Callable<FormValidation>() {
+			public FormValidation call() throws Exception {
+				return depDescriptor.checkDepName(depName, fork);
+			}
+		});
+		submit(id + "fork", "depFork:" + fork + "/" + depName, new Callable<FormValidation>() {
+			public FormValidation call() throws Exception {
+				return depDescriptor.checkDepFork(fork, depName);
+			}
+		});
+		submit(id + "branch", "depBranch:" + fork + "/" + depName + "#" + branch, new Callable<FormValidation>() {
+			public FormValidation call() throws Exception {
+				return depDescriptor.checkDepBranch(branch, depName, fork);
+			}
+		});
+	}
+
+	/**
+	 * Adds the checks of all given repositories and their dependencies
+	 */
+	public void addRootRepositories(RootRepositoryList rootRepos) {
+		for (RootRepository rootRepo : rootRepos) {
+			addRootRepository(rootRepo.getFullName() + ".", rootRepo.getRepoName(), rootRepo.getFork(), rootRepo.getBranch());
+			for (Repository dep : rootRepo.getRepoDeps()) {
+				addDependency(rootRepo.getFullName() + "." + dep.getDepName() + ".", dep.getDepName(), dep.getFork(), dep.getBranch());
+			}
+		}
+	}
+
+	/**
+	 * Adds the checks of a pipeline form as sent by the configuration page:
+	 * <pre>{"repos": [{"id", "repoName", "fork", "branch", "deps": [{"id", "depName", "fork", "branch"}]}]}</pre>
+	 */
+	public void addForm(JSONObject form) {
+		JSONArray repos = form.optJSONArray("repos");
+		if (repos == null) {
+			return;
+		}
+		for (int i = 0; i < repos.size(); i++) {
+			JSONObject repo = repos.getJSONObject(i);
+			addRootRepository(repo.getString("id"), repo.optString("repoName"), repo.optString("fork"), repo.optString("branch"));
+			JSONArray deps = repo.optJSONArray("deps");
+			if (deps == null) {
+				continue;
+			}
+			for (int j = 0; j < deps.size(); j++) {
+				JSONObject dep = deps.getJSONObject(j);
+				addDependency(dep.getString("id"), dep.optString("depName"), dep.optString("fork"), dep.optString("branch"));
+			}
+		}
+	}
+
+	private synchronized void submit(String field, String check, Callable<FormValidation> callable) {
+		Future<FormValidation> future = this.checks.get(check);
+		if (future == null) {
+			future = EXECUTOR.submit(callable);
+			this.checks.put(check, future);
+		}
+		this.fields.put(field, future);
+	}
+
+	/**
+	 * Waits for all checks and returns their results by field id
+	 */
+	public synchronized Map<String, FormValidation> validate() throws InterruptedException {
+		Map<String, FormValidation> results = new LinkedHashMap<String, FormValidation>();
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		for (Map.Entry<String, Future<FormValidation>> field : this.fields.entrySet()) {
+			try {
+				results.put(field.getKey(), field.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+			} catch (ExecutionException ex) {
+				results.put(field.getKey(), FormValidation.error(ex.getCause(), Messages.Validation_Failed()));
+			} catch (TimeoutException ex) {
+				// a running check is not interrupted, it may be loading data other requests wait for
+				field.getValue().cancel(false);
+				results.put(field.getKey(), FormValidation.warning(Messages.Validation_Timeout()));
+			} catch (CancellationException ex) {
+				// shared with a field which already timed out
+				results.put(field.getKey(), FormValidation.warning(Messages.Validation_Timeout()));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Waits for all checks and returns their kind and message by field id
+	 */
+	public JSONObject validateToJSON() throws InterruptedException {
+		JSONObject response = new JSONObject();
+		for (Map.Entry<String, FormValidation> result : validate().entrySet()) {
+			response.put(result.getKey(), toJSON(result.getValue()));
+		}
+		return response;
+	}
+
+	/**
+	 * Returns kind and message of the given result as the configuration page expects them
+	 */
+	static JSONObject toJSON(FormValidation result) {
+		JSONObject field = new JSONObject();
+		field.put("kind", result.kind.name());
+		field.put("message", result.getMessage() == null ? "" : result.getMessage());
+		return field;
+	}
+
+	/**
+	 * Returns the first error of the given results, null if there is none
+	 */
+	public static Map.Entry<String, FormValidation> firstError(Map<String, FormValidation> results) {
+		Iterator<Map.Entry<String, FormValidation>> iter = results.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<String, FormValidation> result = iter.next();
+			if (result.getValue().kind == FormValidation.Kind.ERROR) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Converts the answer of the JavaScript check methods of {@link RepositoryDescriptor},
+	 * a failed lookup is only a warning as it does not tell that something is missing
+	 */
+	static FormValidation toFormValidation(String result) {
+		if (result.length() == 0) {
+			return FormValidation.ok();
+		}
+		if (result.contains(RepositoryDescriptor.LOOKUP_FAILED)) {
+			return FormValidation.warning(result.replace(RepositoryDescriptor.LOOKUP_FAILED, ""));
+		}
+		if (result.contains("__succeeded")) {
+			String message = result.replace("__succeeded", "");
+			return message.length() == 0 ? FormValidation.ok() : FormValidation.ok(message);
+		}
+		return FormValidation.error(result);
+	}
+}
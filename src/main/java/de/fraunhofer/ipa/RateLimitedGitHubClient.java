@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.RequestException;
+
+/**
+ * {@link GitHubClient} which sends all requests through the
+ * {@link GithubScheduler} of its credentials and reports the rate limit
+ * headers of every response back to it. Supports conditional requests
+ * with If-None-Match, which GitHub does not count against the rate limit.
+ * 
+ * The API URL can be changed with the system property
+ * <tt>de.fraunhofer.ipa.RateLimitedGitHubClient.url</tt>, e.g. to run
+ * against a local server.
+ */
+public class RateLimitedGitHubClient extends GitHubClient {
+
+	private static final String HEADER_RATE_LIMIT = "X-RateLimit-Limit";
+
+	private static final String HEADER_RATE_REMAINING = "X-RateLimit-Remaining";
+
+	private static final String HEADER_RATE_RESET = "X-RateLimit-Reset";
+
+	private static final String HEADER_ETAG = "ETag";
+
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+	/**
+	 * ETag to send with the next request of the current thread
+	 */
+	private static final ThreadLocal<String> IF_NONE_MATCH = new ThreadLocal<String>();
+
+	/**
+	 * status code, remaining quota and ETag of the last response received by the current thread
+	 */
+	private static final ThreadLocal<Integer> LAST_STATUS = new ThreadLocal<Integer>();
+
+	private static final ThreadLocal<Integer> LAST_REMAINING = new ThreadLocal<Integer>();
+
+	private static final ThreadLocal<String> LAST_ETAG = new ThreadLocal<String>();
+
+	/**
+	 * Creates a client for github.com or the configured API URL
+	 */
+	public static RateLimitedGitHubClient create() {
+		String url = System.getProperty(RateLimitedGitHubClient.class.getName() + ".url");
+		if (url == null || url.length() == 0) {
+			return new RateLimitedGitHubClient();
+		}
+		try {
+			URL parsed = new URL(url);
+			return new RateLimitedGitHubClient(parsed.getHost(), parsed.getPort(), parsed.getProtocol());
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Invalid GitHub API URL: " + url, ex);
+		}
+	}
+
+	public RateLimitedGitHubClient() {
+		super();
+	}
+
+	public RateLimitedGitHubClient(String hostname, int port, String scheme) {
+		super(hostname, port, scheme);
+	}
+
+	private GithubScheduler getScheduler() {
+		return GithubScheduler.forLogin(getUser());
+	}
+
+	@Override
+	public GitHubResponse get(GitHubRequest request) throws IOException {
+		getScheduler().acquire();
+		LAST_REMAINING.remove();
+		try {
+			return super.get(request);
+		} catch (RequestException ex) {
+			checkExhausted(ex);
+			throw ex;
+		}
+	}
+
+	@Override
+	public InputStream getStream(GitHubRequest request) throws IOException {
+		getScheduler().acquire();
+		LAST_REMAINING.remove();
+		try {
+			return super.getStream(request);
+		} catch (RequestException ex) {
+			checkExhausted(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Sends a GET request which is only answered with content if the resource
+	 * does not match the given ETag anymore
+	 * @param etag ETag of the known resource, null for an unconditional request
+	 * @return the response, null if GitHub reports the resource as not modified
+	 */
+	public GitHubResponse getConditional(GitHubRequest request, String etag) throws IOException {
+		IF_NONE_MATCH.set(etag);
+		LAST_STATUS.remove();
+		try {
+			return get(request);
+		} catch (IOException ex) {
+			// egit reports 304 as error
+			Integer status = LAST_STATUS.get();
+			if (etag != null && status != null && status.intValue() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				return null;
+			}
+			throw ex;
+		} finally {
+			IF_NONE_MATCH.remove();
+		}
+	}
+
+	/**
+	 * Returns the ETag of the last response received by the current thread
+	 */
+	public String getLastEtag() {
+		return LAST_ETAG.get();
+	}
+
+	@Override
+	protected HttpURLConnection configureRequest(HttpURLConnection request) {
+		super.configureRequest(request);
+		String etag = IF_NONE_MATCH.get();
+		if (etag != null) {
+			request.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+		}
+		return request;
+	}
+
+	private void checkExhausted(RequestException ex) {
+		Integer remaining = LAST_REMAINING.get();
+		if (ex.getStatus() == HttpURLConnection.HTTP_FORBIDDEN && remaining != null && remaining.intValue() == 0) {
+			getScheduler().exhausted();
+		}
+	}
+
+	private static long parseHeader(HttpURLConnection request, String header, long defaultValue) {
+		String value = request.getHeaderField(header);
+		if (value == null || value.length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException ignored) {
+			return defaultValue;
+		}
+	}
+
+	@Override
+	protected GitHubClient updateRateLimits(HttpURLConnection request) {
+		super.updateRateLimits(request);
+		try {
+			LAST_STATUS.set(request.getResponseCode());
+		} catch (IOException ex) {
+			LAST_STATUS.remove();
+		}
+		LAST_ETAG.set(request.getHeaderField(HEADER_ETAG));
+		// read the quota of this response, the fields of the client are shared by all threads
+		int remaining = (int)parseHeader(request, HEADER_RATE_REMAINING, -1);
+		LAST_REMAINING.set(remaining);
+		// seconds since epoch
+		long reset = parseHeader(request, HEADER_RATE_RESET, 0) * 1000;
+		getScheduler().update((int)parseHeader(request, HEADER_RATE_LIMIT, -1), remaining, reset);
+		return this;
+	}
+}
@@ -162,13 +162,6 @@ public class Repository extends AbstractDescribableImpl<Repository> implements C
             return Messages.Dependency_DisplayName();
         }
 	    
-	    /**
-	     * Fills combobox with repository names of organization
-	     */
-	    public ComboBoxModel doFillDepNameItems(@QueryParameter String fork) {
-	    	return super.doFillNameItems(fork);
-	    }
-	    
 	    /**
 	     * Checks if given repository exists
 	     */
@@ -192,13 +185,6 @@ public class Repository extends AbstractDescribableImpl<Repository> implements C
 	    	return super.checkDepFork(value, depName);
 	    }
 
-	    /**
-	     * Fill combobox with branches of fork
-	     */
-	    public ComboBoxModel doFillBranchItems(@QueryParameter String depName, @QueryParameter String fork) {
-	    	return super.doFillBranchItems(depName, fork);
-	    }
-	    
 	    /**
 	     * Checks if given branch exists
 	     */
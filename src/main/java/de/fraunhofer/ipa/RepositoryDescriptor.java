@@ -37,24 +37,21 @@
 package de.fraunhofer.ipa;
 
 import hudson.model.Descriptor;
-import hudson.model.Hudson;
 import hudson.util.ComboBoxModel;
 import hudson.util.FormValidation;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.servlet.ServletException;
 
+import net.sf.json.JSONObject;
+
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
 
-import org.eclipse.egit.github.core.RepositoryId;
-import org.eclipse.egit.github.core.RepositoryBranch;
-import org.eclipse.egit.github.core.client.GitHubClient;
-import org.eclipse.egit.github.core.service.*;
-
 
 /**
  * {@link Descriptor} for {@link Repository}.
@@ -62,19 +59,21 @@ import org.eclipse.egit.github.core.service.*;
  * @author Jannik Kett
  */
 public abstract class RepositoryDescriptor extends Descriptor<Repository> {
+    /**
+     * maximal number of names returned by one search
+     */
+    private static final int MAX_SEARCH_RESULTS = 100;
+    
+    /**
+     * marks the answer of a JavaScript check whose lookup failed, e.g. because GitHub
+     * could not be reached or the rate limit is exceeded, so nothing is known to be missing
+     */
+    static final String LOOKUP_FAILED = "__lookupFailed";
+    
     protected RepositoryDescriptor(Class<? extends Repository> clazz) {
         super(clazz);
     }
     
-    //private String githubOrg;
-    private String githubLogin;
-    
-    private GitHubClient githubClient = new GitHubClient();
-    
-    private ComboBoxModel repoNameItems = null;
-    private ComboBoxModel forkItems = null;
-    private ComboBoxModel branchItems = null;
-    
     /**
      * Infers the type of the corresponding {@link Describable} from the outer class.
      * This version works when you follow the common convention, where a descriptor
@@ -117,48 +116,61 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     }
     
     /**
-     * Sets the globally given GitHub configurations
+     * GitHub access shared by all repository descriptors
      */
-    private void setGithubConfig() {
-    	this.githubLogin = Hudson.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getGithubLogin();
-    	String githubPassword = Hudson.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getGithubPassword();
-    	
-    	this.githubClient.setCredentials(this.githubLogin, githubPassword);
+    protected GithubAccess getGithub() {
+    	return GithubAccess.get();
     }
     
     /**
-     * Fills combobox with repository names of organization
+     * Providers of repository and branch information, asked in this order
      */
-    public ComboBoxModel doFillNameItems(@QueryParameter String fork) {
-    	ComboBoxModel aux = new ComboBoxModel();
-
-    	if (this.githubClient.getUser() == null) {
-    		setGithubConfig();
+    protected List<RepositoryMetadataProvider> getMetadataProviders() {
+    	return RepositoryMetadataProvider.all();
+    }
+    
+    /**
+     * Returns true if the given repository exists according to the first provider which knows it
+     */
+    private boolean repositoryExists(String fork, String name) throws IOException {
+    	for (RepositoryMetadataProvider provider : getMetadataProviders()) {
+    		Boolean exists = provider.repositoryExists(fork, name);
+    		if (exists != null) {
+    			return exists;
+    		}
     	}
-    	
+    	return false;
+    }
+    
+    /**
+     * Returns repository names of organization, empty if they can not be fetched
+     */
+    private NameIndex getRepositoryNames(String fork) {
     	if (fork.length() == 0) {
-    		return aux;
-    	}    	
+    		return NameIndex.EMPTY;
+    	}
     	
     	try {
-    		RepositoryService githubRepoSrv = new RepositoryService(githubClient);
-    		List<org.eclipse.egit.github.core.Repository> repos = githubRepoSrv.getRepositories(fork);
-    		for (org.eclipse.egit.github.core.Repository repo : repos) {
-    			if (!aux.contains(repo.getName()))
-					aux.add(0, repo.getName());
-    		}
+    		return getGithub().getRepositoryNames(fork);
 		} catch (IOException ex) {
 			// TODO: handle exception
-		}  
-    	Collections.sort(aux);    	
-    	return this.repoNameItems = aux;
+		}
+    	return NameIndex.EMPTY;
+    }
+    
+    /**
+     * Returns a page of the repository names of organization starting with the given prefix,
+     * suggested while the name is typed
+     * @return total number of matches and the names of the requested page
+     */
+    @JavaScriptMethod
+    public JSONObject searchNames(String fork, String prefix, int offset, int limit) {
+    	return search(getRepositoryNames(fork), prefix, offset, limit);
     }
     
     @JavaScriptMethod
     public String checkName(String repo, String fork) {
     	
-    	doFillNameItems(fork);
-    	
     	if (fork.length() == 0) {
     		return Messages.Repository_NoFork();
     	}  
@@ -167,16 +179,9 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     		return Messages.Repository_NoName();
     	}
     	
-    	// check if given repository is in repo list
-    	for (String repoName : this.repoNameItems) {
-			if (repoName.equals(repo)) {
-				return "";
-			}
-		}
-    	// if repository was not in list, for example extern repository
+    	// check if given repository exists, for example also extern repository
     	try {
-    		RepositoryService githubRepoSrv = new RepositoryService(githubClient);
-    		org.eclipse.egit.github.core.Repository selectedRepo = githubRepoSrv.getRepository(fork, repo);
+    		org.eclipse.egit.github.core.Repository selectedRepo = getGithub().getRepository(fork, repo);
     		if (selectedRepo != null) {
     			if (selectedRepo.isPrivate()) {
     				return Messages.Repository_PrivateFound() + "__succeeded";
@@ -184,7 +189,7 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     			return "__succeeded";
     		}
     	} catch (IOException ex) {
-			// TODO: handle exception
+    		return Messages.Repository_LookupFailed(repo, fork, ex.getMessage()) + LOOKUP_FAILED;
 		}
     	
     	return Messages.Repository_NotFound(repo, fork);
@@ -196,8 +201,6 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     public FormValidation checkDepName(@QueryParameter String value, @QueryParameter String fork)
     		throws IOException, ServletException {
     	
-    	doFillNameItems(fork);
-    	
     	if (fork.length() == 0) {
     		return FormValidation.error(Messages.Dependency_NoFork());
     	} 
@@ -206,16 +209,9 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     		return FormValidation.warning(Messages.Repository_NoName());
     	}
     	
-    	// check if given repository is in repo list
-    	for (String repoName : this.repoNameItems) {
-			if (repoName.equals(value)) {
-				return FormValidation.ok();
-			}
-		}
-    	// if repository was not in list, for example extern repository
+    	// check if given repository exists, for example also extern repository
     	try {
-    		RepositoryService githubRepoSrv = new RepositoryService(githubClient);
-    		org.eclipse.egit.github.core.Repository selectedRepo = githubRepoSrv.getRepository(fork, value);
+    		org.eclipse.egit.github.core.Repository selectedRepo = getGithub().getRepository(fork, value);
     		if (selectedRepo != null) {
     			if (selectedRepo.isPrivate()) {
     				return FormValidation.ok(Messages.Dependency_PrivateFound());
@@ -223,7 +219,7 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     			return FormValidation.ok();
     		}
     	} catch (IOException ex) {
-			// TODO: handle exception
+    		return FormValidation.warning(Messages.Repository_LookupFailed(value, fork, ex.getMessage()));
 		}
     	
     	return FormValidation.warning(Messages.Dependency_NotFound(value, fork));//error(Messages.Repository_NoFound());
@@ -231,97 +227,64 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     
     
     /**
-     * Fill combobox with forks of repository
+     * Returns owners of all known forks of repository
      */
-    public ComboBoxModel doFillForkItems(@QueryParameter String value, @QueryParameter String name) {
-    	ComboBoxModel aux = new ComboBoxModel();
+    private NameIndex getForkOwners(String value, String name) {
+    	GithubAccess github = getGithub();
+    	NameIndex network = NameIndex.EMPTY;
+    	NameIndex loginNetwork = NameIndex.EMPTY;
     	
-    	if (this.githubClient.getUser() == null) {
-    		setGithubConfig();
-    	}
+    	try {
+    		//get fork network of repository
+    		network = github.getForkNetwork(value, name);
+    	} catch (Exception ex) {}
     	
     	try {
-    		RepositoryService githubRepoSrv = new RepositoryService(this.githubClient);
-    		List<org.eclipse.egit.github.core.Repository> forks;
-    		
-    		try {
-    			//get parent repository if repository itself is forked
-	    		org.eclipse.egit.github.core.Repository parent = githubRepoSrv.getRepository(value, name).getParent();
-	    		
-	    		if (parent != null) {
-		    		//get fork of parent repository
-		    		forks = githubRepoSrv.getForks(parent);
-		    		for (org.eclipse.egit.github.core.Repository fork : forks) {
-		    			org.eclipse.egit.github.core.User user = fork.getOwner();
-		    			aux.add(user.getLogin());
-		    		}
-	    		}
-	    		
-	    		if (aux.isEmpty()) {
-		    		//add forks of repository
-		    		forks = githubRepoSrv.getForks(new RepositoryId(value, name));
-		    		for (org.eclipse.egit.github.core.Repository fork : forks) {
-		    			org.eclipse.egit.github.core.User user = fork.getOwner();
-		    			aux.add(user.getLogin());
-		    		}
-	    		}
-	    		aux.add(0, value);
-    		} catch (Exception ex) {}
-    		
-    		try {
-    			//try to use global githubLogin, find repository and add forks
-	    		forks = githubRepoSrv.getForks(new RepositoryId(this.githubLogin, name));
-	    		for (org.eclipse.egit.github.core.Repository fork : forks) {
-	    			org.eclipse.egit.github.core.User user = fork.getOwner();
-	    			if (!aux.contains(user.getLogin())) {
-	    				aux.add(user.getLogin());
-	    			}
-	    		}
-    		} catch (Exception ex) {}
-    		
-    	} catch (Exception ex) {
-			// TODO: handle exception
-		}
-    	Collections.sort(aux);
-    	return this.forkItems = aux;
+    		//try to use global githubLogin, find repository and add its fork network
+    		String login = github.getGithubLogin();
+    		if (login != null && !login.equals(value)) {
+    			loginNetwork = github.getForkNetwork(login, name);
+    		}
+    	} catch (Exception ex) {}
+    	
+    	// usually both belong to the same network, which is served as it is
+    	if ((loginNetwork == network || loginNetwork.isEmpty()) && (network.isEmpty() || network.contains(value))) {
+    		return network;
+    	}
+    	Set<String> aux = new HashSet<String>(network.asList());
+    	aux.addAll(loginNetwork.asList());
+    	if (!network.isEmpty()) {
+    		aux.add(value);
+    	}
+    	return new NameIndex(aux);
+    }
+    
+    /**
+     * Fill combobox with forks of repository
+     */
+    public ComboBoxModel doFillForkItems(@QueryParameter String value, @QueryParameter String name) {
+    	ComboBoxModel aux = new ComboBoxModel();
+    	aux.addAll(getForkOwners(value, name).asList());
+    	return aux;
     }
     
     @JavaScriptMethod
     public String checkFork(String fork, String repo) {
     	
-    	doFillForkItems(fork, repo);
-    	
     	if (fork.length() == 0) {
     		return Messages.Fork_NoFork();
     	}
     	
-    	// check if given fork owner is in fork list
-    	for (String f : this.forkItems) {
-			if (f.equals(fork)) {
-				return "__succeeded";
-			}
-		}
-    	
-    	// if fork owner was not in list
     	try {
     		// check if user exists
 			try {
-				UserService githubUserSrv = new UserService(this.githubClient);
-				githubUserSrv.getUser(fork);
-			} catch (Exception ex) {
-				return Messages.Fork_OwnerNotFound() + "\n" + ex.getMessage();
-			}
-			// check if user has public repository with given name
-			try {
-				RepositoryService githubRepoSrv = new RepositoryService(this.githubClient);
-				List<org.eclipse.egit.github.core.Repository> repos = githubRepoSrv.getRepositories(fork);
-				for (org.eclipse.egit.github.core.Repository r : repos) {
-					if (r.getName().equals(repo))
-						return Messages.Fork_Found() + "__succeeded";
+				if (!getGithub().userExists(fork)) {
+					return Messages.Fork_OwnerNotFound();
 				}
 			} catch (Exception ex) {
-				return Messages.Fork_GetReposFailed() + "\n" + ex.getMessage();
+				return Messages.Fork_LookupFailed(fork, ex.getMessage()) + LOOKUP_FAILED;
 			}
+			// whether the repository exists for this owner is told by checkName
 			return "__succeeded";
 		} catch (Exception ex) {
 			return Messages.Fork_AuthFailed() + "\n" + ex.getMessage();
@@ -334,38 +297,26 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     public FormValidation checkDepFork(@QueryParameter String value, @QueryParameter String name)
     		throws IOException, ServletException {
     	    	
-    	doFillForkItems(value, name);
-    	    	
     	if (value.length() == 0) {
     		return FormValidation.error(Messages.Fork_NoFork());
     	}
     	
-    	// check if given fork owner is in fork list
-    	/*for (String fork : this.forkItems) {
-			if (fork.equals(value)) {
-				return (msg.length()==0) ? FormValidation.ok() : FormValidation.ok(msg);
-			}
-		}*/
-    	
-    	// if fork owner was not in list
     	try {
     		// check if user exists
 			try {
-				UserService githubUserSrv = new UserService(this.githubClient);
-				githubUserSrv.getUser(value);
+				if (!getGithub().userExists(value)) {
+					return FormValidation.error(Messages.Fork_OwnerNotFound());
+				}
 			} catch (Exception ex) {
-				return FormValidation.error(Messages.Fork_OwnerNotFound() + "\n" + ex.getMessage());
+				return FormValidation.warning(Messages.Fork_LookupFailed(value, ex.getMessage()));
 			}
 			// check if user has public repository with given name
 			try {
-				RepositoryService githubRepoSrv = new RepositoryService(this.githubClient);
-				List<org.eclipse.egit.github.core.Repository> repos = githubRepoSrv.getRepositories(value);
-				for (org.eclipse.egit.github.core.Repository repo : repos) {
-					if (repo.getName().equals(name))
-						return FormValidation.ok(Messages.Fork_Found());
+				if (repositoryExists(value, name)) {
+					return FormValidation.ok(Messages.Fork_Found());
 				}
 			} catch (Exception ex) {
-				return FormValidation.error(Messages.Fork_GetReposFailed() + "\n" + ex.getMessage());
+				return FormValidation.warning(Messages.Fork_GetReposFailed() + "\n" + ex.getMessage());
 			}
 			return FormValidation.ok();
 		} catch (Exception ex) {
@@ -374,53 +325,77 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     }
         
     /**
-     * Fills combobox with branches of given repository fork
-     * @param repoName
-     * @param fork
-     * @return
+     * Returns branches of given repository fork, empty if they can not be fetched
      */
-    public ComboBoxModel doFillBranchItems(@QueryParameter String name, @QueryParameter String fork) {
-    	ComboBoxModel aux = new ComboBoxModel();
-    	
-    	if (this.githubClient.getUser() == null) {
-    		setGithubConfig();
-    	}
-    	
+    private NameIndex getBranchNames(String name, String fork) {
     	if (fork.length() == 0) {
-    		return aux;
+    		return NameIndex.EMPTY;
     	}
     	
     	try {
-    		RepositoryId repoId = new RepositoryId(fork, name);
-    		RepositoryService githubRepoSrv = new RepositoryService(this.githubClient);
-    		List<RepositoryBranch> branches = githubRepoSrv.getBranches(repoId);
-    		
-    		for (RepositoryBranch branch : branches) {
-    			aux.add(branch.getName());
-    		}   		
-    		
+    		for (RepositoryMetadataProvider provider : getMetadataProviders()) {
+    			NameIndex branches = provider.getBranchNames(fork, name);
+    			if (branches != null) {
+    				return branches;
+    			}
+    		}
 		} catch (Exception e) {
 			// TODO: handle exception
 		}
-    	Collections.sort(aux);
-    	return this.branchItems = aux;
+    	return NameIndex.EMPTY;
     }
     
+    /**
+     * Returns a page of the branches of given repository fork starting with the given prefix,
+     * suggested while the branch is typed
+     * @return total number of matches and the branch names of the requested page
+     */
     @JavaScriptMethod
-    public String checkBranch(String branch, String fork, String repo) {
+    public JSONObject searchBranches(String name, String fork, String prefix, int offset, int limit) {
+    	return search(getBranchNames(name, fork), prefix, offset, limit);
+    }
+    
+    /**
+     * Checks if branch exists in given repository fork without fetching all branches,
+     * asking local mirrors before GitHub
+     * @throws IOException if the branch could not be looked up
+     */
+    private boolean branchExists(String name, String fork, String branch) throws IOException {
+    	if (fork.length() == 0) {
+    		return false;
+    	}
     	
-    	doFillBranchItems(repo, fork);
+    	for (RepositoryMetadataProvider provider : getMetadataProviders()) {
+    		Boolean exists = provider.branchExists(fork, name, branch);
+    		if (exists != null) {
+    			return exists;
+    		}
+    	}
+    	return false;
+    }
+    
+    private static JSONObject search(NameIndex index, String prefix, int offset, int limit) {
+    	JSONObject result = new JSONObject();
+    	result.put("total", index.countStartingWith(prefix));
+    	result.put("matches", index.startingWith(prefix, offset, Math.min(limit, MAX_SEARCH_RESULTS)));
+    	return result;
+    }
+    
+    @JavaScriptMethod
+    public String checkBranch(String branch, String fork, String repo) {
     	
     	if (branch.length() == 0) {
     		return Messages.Branch_NoBranch();
     	}
     	
-    	// check if given branch is in branch list
-    	for (String b : this.branchItems) {
-			if (b.equals(branch)) {
-				return "__succeeded";
-			}
-		}
+    	// check if given branch exists
+    	try {
+    		if (branchExists(repo, fork, branch)) {
+    			return "__succeeded";
+    		}
+    	} catch (IOException ex) {
+    		return Messages.Branch_LookupFailed(branch, ex.getMessage()) + LOOKUP_FAILED;
+    	}
     	    	
     	return Messages.Branch_NotFound(branch);
     }
@@ -431,18 +406,18 @@ public abstract class RepositoryDescriptor extends Descriptor<Repository> {
     public FormValidation checkDepBranch(@QueryParameter String value, @QueryParameter String name, @QueryParameter String fork)
     		throws IOException, ServletException {
     	    	
-    	doFillBranchItems(name, fork);
-    	
     	if (value.length() == 0) {
     		return FormValidation.error(Messages.Branch_NoBranch());
     	}
     	
-    	// check if given branch is in branch list
-    	for (String branch : this.branchItems) {
-			if (branch.equals(value)) {
-				return FormValidation.ok();
-			}
-		}
+    	// check if given branch exists
+    	try {
+    		if (branchExists(name, fork, value)) {
+    			return FormValidation.ok();
+    		}
+    	} catch (IOException ex) {
+    		return FormValidation.warning(Messages.Branch_LookupFailed(value, ex.getMessage()));
+    	}
     	    	
     	return FormValidation.error(Messages.Branch_NotFound(value));
     }
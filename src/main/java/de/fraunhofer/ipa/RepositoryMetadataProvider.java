@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+
+import java.io.IOException;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Source of the repository and branch information used by the checks and
+ * comboboxes of the {@link RepositoryDescriptor}s. The registered providers
+ * are asked in the order of their ordinal until one of them knows the answer,
+ * so local sources can be put in front of GitHub.
+ * 
+ * All methods return null if the provider can not answer the query.
+ */
+public abstract class RepositoryMetadataProvider implements ExtensionPoint {
+
+	/**
+	 * Returns true if the given repository exists
+	 */
+	public Boolean repositoryExists(String owner, String name) throws IOException {
+		return null;
+	}
+
+	/**
+	 * Returns the branch names of the given repository
+	 */
+	public NameIndex getBranchNames(String owner, String name) throws IOException {
+		return null;
+	}
+
+	/**
+	 * Returns true if the given branch exists
+	 */
+	public Boolean branchExists(String owner, String name, String branch) throws IOException {
+		return null;
+	}
+
+	/**
+	 * Returns all the registered {@link RepositoryMetadataProvider}s, highest ordinal first
+	 */
+	public static ExtensionList<RepositoryMetadataProvider> all() {
+		return Jenkins.getInstance().getExtensionList(RepositoryMetadataProvider.class);
+	}
+}
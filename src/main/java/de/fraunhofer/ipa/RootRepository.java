@@ -49,8 +49,7 @@ import net.sf.json.JSONObject;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
@@ -62,10 +61,13 @@ import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.bind.JavaScriptMethod;
 
-import org.apache.commons.lang.StringUtils;
-
 public class RootRepository extends Repository {
 
+	/**
+	 * suffix of the form keys of the Ubuntu distro/architecture matrix
+	 */
+	private static final String ENV_SUFFIX = "__env";
+
 	/**
 	 * 
 	 */
@@ -77,9 +79,15 @@ public class RootRepository extends Repository {
 	protected String fullName;
 	
 	/**
-	 * List of ros distros to build
+	 * ROS distros to build and Ubuntu distros and architectures of the regular build
 	 */
-	private final ArrayList<String> rosDistro;
+	private BuildMatrix matrix;
+	
+	/**
+	 * @deprecated kept to read old configurations, replaced by {@link #matrix}
+	 */
+	@Deprecated
+	private ArrayList<String> rosDistro;
 	
 	/**
 	 * Ubuntu distro to build with priority
@@ -91,12 +99,22 @@ public class RootRepository extends Repository {
 	 */
 	private String prioArch;
 	
+	/**
+	 * @deprecated kept to read old configurations, replaced by {@link #matrix}
+	 */
+	@Deprecated
 	private Map<String, List<String>> matrixDistroArch;
 	
 	/**
 	 * Jobs to include in pipeline
 	 */
-	private final ArrayList<String> jobs;
+	private EnumSet<PipelineJob> pipelineJobs;
+	
+	/**
+	 * @deprecated kept to read old configurations, replaced by {@link #pipelineJobs}
+	 */
+	@Deprecated
+	private ArrayList<String> jobs;
 	
 	/**
 	 * Hardware/robot to build code and run tests on
@@ -121,25 +139,26 @@ public class RootRepository extends Repository {
 		}
 		this.suffix = suffix;
 		
-		this.rosDistro = new ArrayList<String>();
+		this.matrix = new BuildMatrix();
 		Iterator<?> iter = rosDistro.keys();
 		while(iter.hasNext()){
 	        String key = (String)iter.next();
 	        String value = rosDistro.getString(key);
 	        if (value.equals("true")) {
-	        	updateListItem(this.rosDistro, true, key);
+	        	this.matrix.addRosDistro(key);
 	        }
 		}
 		
 		this.prioUbuntuDistro = prioUbuntuDistro;
 		this.prioArch = prioArch;
 		
-		this.matrixDistroArch = new HashMap<String, List<String>>();
-		this.jobs = new ArrayList<String>();
-		updateList(jobs, regularBuild, "regular_build");
-		updateList(jobs, downstreamBuild, "downstream_build");
-		updateList(jobs, hardwareBuild, "hardware_build");
-		updateListItem(jobs, release, "release");
+		this.pipelineJobs = EnumSet.noneOf(PipelineJob.class);
+		updateJobs(regularBuild, PipelineJob.REGULAR_BUILD);
+		updateJobs(downstreamBuild, PipelineJob.DOWNSTREAM_BUILD);
+		updateJobs(hardwareBuild, PipelineJob.HARDWARE_BUILD);
+		if (release) {
+			this.pipelineJobs.add(PipelineJob.RELEASE);
+		}
 		
 		this.repoDeps = new ArrayList<Repository>(Util.fixNull(repoDeps));
 	}
@@ -153,38 +172,45 @@ public class RootRepository extends Repository {
 				hardwareBuild, release, Arrays.asList(repoDeps));
 	}
 	
-	private void updateList(List<String> list, JSONObject parent, String name) {
+	private void updateJobs(JSONObject parent, PipelineJob job) {
 		if (parent != null) {
-			list.add(name);
+			this.pipelineJobs.add(job);
 			Iterator<?> iter = parent.keys();
 			while(iter.hasNext()){
 		        String key = (String)iter.next();
-		        String value = parent.getString(key);
 		        if (key.equals("robot")) {
-		        	this.robot = value;
-		        } else if (value.equals("true")) {
-		        	if (key.endsWith("__env")) {
-		        		List<String> archs = new ArrayList<String>();
-		        		String start = key.split("__")[0];
-		        		if (parent.getString(start+"__amd64__env").equals("true")) {
-		        			archs.add("amd64");
-		        		}
-		        		if (parent.getString(start+"__i386__env").equals("true")) {
-		        			archs.add("i386");
-		        		}
-		        		this.matrixDistroArch.put(start, archs);
-		        	} else {
-		        		list.add(StringUtils.join(key.split("(?=\\p{Upper})"), "_").toLowerCase());
+		        	this.robot = parent.getString(key);
+		        } else if (parent.optBoolean(key)) {
+		        	PipelineJob subJob = PipelineJob.fromFormKey(key);
+		        	if (subJob != null) {
+		        		this.pipelineJobs.add(subJob);
+		        	} else if (key.endsWith(ENV_SUFFIX)) {
+		        		// <ubuntu>__<arch>__env
+		        		int sep = key.indexOf("__");
+		        		this.matrix.addEntry(key.substring(0, sep), key.substring(sep + 2, key.length() - ENV_SUFFIX.length()));
 		        	}
 		        }
 			}
 		}
 	}
 	
-	private void updateListItem(List<String> list, boolean item, String value) {
-		if (item) {
-			list.add(value);
-		} 
+	private Object readResolve() {
+		if (this.matrix == null) {
+			this.matrix = new BuildMatrix(this.rosDistro, this.matrixDistroArch);
+			this.rosDistro = null;
+			this.matrixDistroArch = null;
+		}
+		if (this.pipelineJobs == null) {
+			this.pipelineJobs = EnumSet.noneOf(PipelineJob.class);
+			for (String name : Util.fixNull(this.jobs)) {
+				PipelineJob job = PipelineJob.fromJobName(name);
+				if (job != null) {
+					this.pipelineJobs.add(job);
+				}
+			}
+			this.jobs = null;
+		}
+		return this;
 	}
 		
 	public void setRepoName(String repoName) {
@@ -208,11 +234,18 @@ public class RootRepository extends Repository {
 	}
 	
 	public boolean isRosDistroChecked(String rosDistro) {
-		return this.rosDistro.contains(rosDistro);
+		return this.matrix.isRosDistroChecked(rosDistro);
 	}
 	
+	/**
+	 * @return the ROS distros to build in the order of the global ROS distros
+	 */
 	public List<String> getRosDistro() {
-		return this.rosDistro;
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null) {
+			return this.matrix.getRosDistros();
+		}
+		return this.matrix.getRosDistros(jenkins.getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getAllRosDistros());
 	}
 	
 	public void setPrioUbuntuDistro(String prioUbuntuDistro) {
@@ -234,52 +267,55 @@ public class RootRepository extends Repository {
 	
 	@JavaScriptMethod
 	public boolean isMatrixEntryChecked(String ubuntu, String arch) {
-		if (this.matrixDistroArch.containsKey(ubuntu)) {
-			if (this.matrixDistroArch.get(ubuntu).contains(arch)) {
-				return true;
-			}
-		}
-		return false;
+		return this.matrix.isEntryChecked(ubuntu, arch);
 	}
 	
 	public Map<String, List<String>> getMatrixDistroArch() {
-		return this.matrixDistroArch;
+		return this.matrix.getEntries();
 	}
 	
 	public boolean getRegularBuild() {
-		return this.jobs.contains("regular_build");
+		return this.pipelineJobs.contains(PipelineJob.REGULAR_BUILD);
 	}
 	
 	public boolean getDownstreamBuild() {
-		return this.jobs.contains("downstream_build");
+		return this.pipelineJobs.contains(PipelineJob.DOWNSTREAM_BUILD);
 	}
 	
 	public boolean getNongraphicsTest(){
-		return this.jobs.contains("nongraphics_test");
+		return this.pipelineJobs.contains(PipelineJob.NONGRAPHICS_TEST);
 	}
 	
 	public boolean getGraphicsTest() {
-		return this.jobs.contains("graphics_test");
+		return this.pipelineJobs.contains(PipelineJob.GRAPHICS_TEST);
 	}
 	
 	public boolean getHardwareBuild() {
-		return this.jobs.contains("hardware_build");
+		return this.pipelineJobs.contains(PipelineJob.HARDWARE_BUILD);
 	}
 	
 	public boolean getAutomaticHwTest() {
-		return this.jobs.contains("automatic_hw_test");
+		return this.pipelineJobs.contains(PipelineJob.AUTOMATIC_HW_TEST);
 	}
 	
 	public boolean getInteractiveHwTest() {
-		return this.jobs.contains("interactive_hw_test");
+		return this.pipelineJobs.contains(PipelineJob.INTERACTIVE_HW_TEST);
 	}
 	
 	public boolean getRelease() {
-		return this.jobs.contains("release");
+		return this.pipelineJobs.contains(PipelineJob.RELEASE);
 	}
 	
 	public List<String> getJobs() {
-		return this.jobs;
+		List<String> names = new ArrayList<String>(this.pipelineJobs.size());
+		for (PipelineJob job : this.pipelineJobs) {
+			names.add(job.getJobName());
+		}
+		return names;
+	}
+	
+	public Set<PipelineJob> getPipelineJobs() {
+		return Collections.unmodifiableSet(this.pipelineJobs);
 	}
 	
 	public void setRobot(String robot) {
@@ -319,26 +355,16 @@ public class RootRepository extends Repository {
 	    	return Hudson.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getAllRosDistros();
 	    }
 	    
+	    private TargetMatrix getTargetMatrix() {
+	    	return Hudson.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getTargetMatrix();
+	    }
+	    
 	    /**
 	     * Get a list of all Ubuntu releases defined in the global target.yaml file
 	     * @return
 	     */
 	    public List<String> getUbuntuReleases() {
-	    	List<String> ubuntuReleases = new ArrayList<String>();
-	    	List<Map<String, List<String>>> targets = Hudson.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getTargets();
-	    	
-	    	for (Map<String, List<String>> ros : targets) {
-	    		if (!ros.keySet().iterator().next().equals("backports")) {
-		    		for (List<String> ubuntuList : ros.values()) {
-		    			for (String ubuntu : ubuntuList) {
-		    				if (!ubuntuReleases.contains(ubuntu)) {
-		    					ubuntuReleases.add(ubuntu);
-		    				}
-		    			}
-		    		}
-	    		}
-	    	}
-	    	return ubuntuReleases;
+	    	return getTargetMatrix().getUbuntuReleases();
 	    }
 	    
 	    /**
@@ -348,27 +374,7 @@ public class RootRepository extends Repository {
 	     */
 	    @JavaScriptMethod
 	    public List<String> getSupportedUbuntuReleases(String rosDistroListString) {
-	    	List<Map<String, List<String>>> targets = Hudson.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getTargets();
-	    	Set<String> allUbuntuSet = new HashSet<String>(getUbuntuReleases());
-	    	Boolean rosFound = false;
-	    	
-	    	for (String rosDistro : rosDistroListString.split(",")) {
-	    		for (Map<String, List<String>> ros : targets) {
-	    			if (ros.keySet().iterator().next().equals(rosDistro)) {
-	    				rosFound = true;
-	    				for (List<String> ubuntuList : ros.values()) {
-	    					allUbuntuSet.retainAll(ubuntuList);
-	    				}
-	    			}
-	    		}
-	    	}
-	    	if (rosFound.equals(true)) {
-	    		List<String> allUbuntuList = new ArrayList<String>(allUbuntuSet);
-	    		Collections.sort(allUbuntuList);
-	    		return allUbuntuList;
-	    	} else {
-	    		return Collections.<String>emptyList();
-	    	}
+	    	return getTargetMatrix().getSupportedUbuntuReleases(rosDistroListString);
 	    }
 	    
 	    /**
@@ -377,25 +383,7 @@ public class RootRepository extends Repository {
 	     * @return
 	     */
 	    public String getSupportedROS(String ubuntuDistro) {
-	    	List<String> rosDistros = new ArrayList<String>();
-	    	List<Map<String, List<String>>> targets = Hudson.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class).getTargets();
-	    	
-	    	for (Map<String, List<String>> ros : targets) {
-	    		for (List<String> ubuntuList : ros.values()) {
-	    			if (ubuntuList.contains(ubuntuDistro) && !ros.keySet().iterator().next().equals("backports")) {
-	    				rosDistros.add(ros.keySet().iterator().next());
-	    			}
-	    		}
-	    	}
-	    		    	
-	    	return rosDistros.toString();
-	    }
-	    
-	    /**
-	     * Fills combobox with repository names of organization
-	     */
-	    public ComboBoxModel doFillRepoNameItems(@QueryParameter String fork) {
-	    	return super.doFillNameItems(fork);
+	    	return getTargetMatrix().getSupportedROS(ubuntuDistro);
 	    }
 	    
 	    /**
@@ -404,13 +392,6 @@ public class RootRepository extends Repository {
 	    public ComboBoxModel doFillForkItems(@QueryParameter String value, @QueryParameter String repoName) {
 	    	return super.doFillForkItems(value, repoName);
 	    }
-
-	    /**
-	     * Fill combobox with branches of fork
-	     */
-	    public ComboBoxModel doFillBranchItems(@QueryParameter String repoName, @QueryParameter String fork) {
-	    	return super.doFillBranchItems(repoName, fork);
-	    }
 		
 	    /**
 	     * Fill architecture selection
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable index of the ROS releases of the targets.yaml and the Ubuntu
+ * releases each of them supports. Built once whenever the targets change, so
+ * the queries of the configuration page neither scan nor copy the targets.
+ * Names are interned, the supported Ubuntu releases of a ROS release are kept
+ * as bit set over the Ubuntu release indexes.
+ * 
+ * The <tt>backports</tt> entry of the targets is not a ROS release and is ignored.
+ */
+public final class TargetMatrix {
+
+	public static final TargetMatrix EMPTY = new TargetMatrix(null);
+
+	private static final String BACKPORTS = "backports";
+
+	/**
+	 * maximal number of remembered answers of {@link #getSupportedUbuntuReleases(String)}
+	 */
+	private static final int MAX_CACHED_QUERIES = 256;
+
+	private final List<String> rosDistros;
+
+	/**
+	 * in order of their first appearance in the targets
+	 */
+	private final List<String> ubuntuReleases;
+
+	private final Map<String, Integer> rosIndex = new HashMap<String, Integer>();
+
+	private final Map<String, Integer> ubuntuIndex = new HashMap<String, Integer>();
+
+	/**
+	 * supported Ubuntu release indexes by ROS release index
+	 */
+	private final BitSet[] ubuntusOfRos;
+
+	/**
+	 * Ubuntu release indexes in alphabetical order of the names
+	 */
+	private final int[] sortedUbuntus;
+
+	/**
+	 * ROS releases supporting an Ubuntu release, formatted as list
+	 */
+	private final Map<String, String> supportedRos = new HashMap<String, String>();
+
+	private final ConcurrentMap<String, List<String>> supportedUbuntus = new ConcurrentHashMap<String, List<String>>();
+
+	/**
+	 * @param targets parsed targets.yaml: list of maps from ROS release to its Ubuntu releases, may be null
+	 */
+	public TargetMatrix(List<? extends Map<?, ?>> targets) {
+		// ubuntu releases by ros release, in order of the targets
+		Map<String, List<String>> aux = new LinkedHashMap<String, List<String>>();
+		List<String> ubuntus = new ArrayList<String>();
+		if (targets != null) {
+			for (Map<?, ?> target : targets) {
+				for (Map.Entry<?, ?> entry : target.entrySet()) {
+					String ros = String.valueOf(entry.getKey()).intern();
+					if (ros.equals(BACKPORTS) || !(entry.getValue() instanceof List)) {
+						continue;
+					}
+					List<String> supported = aux.get(ros);
+					if (supported == null) {
+						supported = new ArrayList<String>();
+						aux.put(ros, supported);
+					}
+					for (Object item : (List<?>)entry.getValue()) {
+						String ubuntu = String.valueOf(item).intern();
+						supported.add(ubuntu);
+						if (!this.ubuntuIndex.containsKey(ubuntu)) {
+							this.ubuntuIndex.put(ubuntu, ubuntus.size());
+							ubuntus.add(ubuntu);
+						}
+					}
+				}
+			}
+		}
+		this.rosDistros = Collections.unmodifiableList(new ArrayList<String>(aux.keySet()));
+		this.ubuntuReleases = Collections.unmodifiableList(ubuntus);
+
+		this.ubuntusOfRos = new BitSet[aux.size()];
+		List<List<String>> rosOfUbuntu = new ArrayList<List<String>>();
+		for (int i = 0; i < ubuntus.size(); i++) {
+			rosOfUbuntu.add(new ArrayList<String>());
+		}
+		int index = 0;
+		for (Map.Entry<String, List<String>> entry : aux.entrySet()) {
+			this.rosIndex.put(entry.getKey(), index);
+			BitSet bits = new BitSet(ubuntus.size());
+			for (String ubuntu : entry.getValue()) {
+				int ubuntuIdx = this.ubuntuIndex.get(ubuntu);
+				if (!bits.get(ubuntuIdx)) {
+					bits.set(ubuntuIdx);
+					rosOfUbuntu.get(ubuntuIdx).add(entry.getKey());
+				}
+			}
+			this.ubuntusOfRos[index++] = bits;
+		}
+		for (int i = 0; i < ubuntus.size(); i++) {
+			this.supportedRos.put(ubuntus.get(i), rosOfUbuntu.get(i).toString());
+		}
+
+		Integer[] sorted = new Integer[ubuntus.size()];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = i;
+		}
+		final List<String> names = ubuntus;
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return names.get(a).compareTo(names.get(b));
+			}
+		});
+		this.sortedUbuntus = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			this.sortedUbuntus[i] = sorted[i];
+		}
+	}
+
+	/**
+	 * Returns all ROS releases in the order of the targets
+	 */
+	public List<String> getRosDistros() {
+		return this.rosDistros;
+	}
+
+	/**
+	 * Returns all Ubuntu releases in the order of their first appearance in the targets
+	 */
+	public List<String> getUbuntuReleases() {
+		return this.ubuntuReleases;
+	}
+
+	public boolean isSupported(String rosDistro, String ubuntu) {
+		Integer ros = this.rosIndex.get(rosDistro);
+		Integer ubuntuIdx = this.ubuntuIndex.get(ubuntu);
+		return ros != null && ubuntuIdx != null && this.ubuntusOfRos[ros].get(ubuntuIdx);
+	}
+
+	/**
+	 * Returns the Ubuntu releases supported by all of the given ROS releases in
+	 * alphabetical order. Unknown ROS releases are ignored, the result is empty
+	 * if none of them is known.
+	 * @param rosDistroList comma separated ROS releases
+	 */
+	public List<String> getSupportedUbuntuReleases(String rosDistroList) {
+		List<String> result = this.supportedUbuntus.get(rosDistroList);
+		if (result != null) {
+			return result;
+		}
+
+		BitSet aux = null;
+		for (String rosDistro : rosDistroList.split(",")) {
+			Integer ros = this.rosIndex.get(rosDistro);
+			if (ros == null) {
+				continue;
+			}
+			if (aux == null) {
+				aux = (BitSet)this.ubuntusOfRos[ros].clone();
+			} else {
+				aux.and(this.ubuntusOfRos[ros]);
+			}
+		}
+		if (aux == null) {
+			result = Collections.emptyList();
+		} else {
+			List<String> supported = new ArrayList<String>(aux.cardinality());
+			for (int ubuntu : this.sortedUbuntus) {
+				if (aux.get(ubuntu)) {
+					supported.add(this.ubuntuReleases.get(ubuntu));
+				}
+			}
+			result = Collections.unmodifiableList(supported);
+		}
+		// the argument comes from the page, do not remember arbitrary many of them
+		if (this.supportedUbuntus.size() < MAX_CACHED_QUERIES) {
+			this.supportedUbuntus.putIfAbsent(rosDistroList, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ROS releases which support the given Ubuntu release, formatted as list
+	 */
+	public String getSupportedROS(String ubuntu) {
+		String rosDistros = this.supportedRos.get(ubuntu);
+		return rosDistros == null ? "[]" : rosDistros;
+	}
+}
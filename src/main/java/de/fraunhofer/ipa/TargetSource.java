@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.Util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.input.TeeInputStream;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * A targets.yaml which is fetched from its URL and kept on disk. The YAML
+ * is parsed while it is downloaded and only replaces the last good copy
+ * once it was parsed successfully. Requests are conditional on the ETag
+ * and modification time of the last copy, so unchanged files are neither
+ * downloaded nor parsed again.
+ */
+public class TargetSource {
+
+	private static final Logger LOGGER = Logger.getLogger(TargetSource.class.getName());
+
+	private static final int CONNECT_TIMEOUT = Integer.getInteger(TargetSource.class.getName() + ".connectTimeout", 10) * 1000;
+
+	private static final int READ_TIMEOUT = Integer.getInteger(TargetSource.class.getName() + ".readTimeout", 30) * 1000;
+
+	private final String url;
+
+	/**
+	 * last good copy of the YAML and the response headers it came with
+	 */
+	private final File file;
+
+	private final File infoFile;
+
+	private volatile List<Map<String, List<String>>> targets;
+
+	private volatile String etag;
+
+	private volatile long lastModified;
+
+	private volatile long lastCheck;
+
+	private volatile long lastChange;
+
+	private volatile long fetchTime;
+
+	private volatile long parseTime;
+
+	private volatile String lastResult;
+
+	/**
+	 * @param dir directory of the local copies, shared by all sources
+	 */
+	public TargetSource(String url, File dir) {
+		this.url = url;
+		String name = Util.getDigestOf(url);
+		this.file = new File(dir, name + ".yaml");
+		this.infoFile = new File(dir, name + ".properties");
+	}
+
+	public String getUrl() {
+		return this.url;
+	}
+
+	/**
+	 * Returns the parsed targets, null if they were neither loaded nor fetched yet
+	 */
+	public List<Map<String, List<String>>> getTargets() {
+		return this.targets;
+	}
+
+	/**
+	 * Reads the last good copy from disk
+	 * @return true if there was one
+	 */
+	public synchronized boolean loadCached() {
+		if (!this.file.exists()) {
+			return false;
+		}
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(this.file));
+			try {
+				this.targets = parse(in);
+			} finally {
+				in.close();
+			}
+			if (this.infoFile.exists()) {
+				Properties info = new Properties();
+				InputStream infoIn = new FileInputStream(this.infoFile);
+				try {
+					info.load(infoIn);
+				} finally {
+					infoIn.close();
+				}
+				this.etag = info.getProperty("etag");
+				this.lastModified = Long.parseLong(info.getProperty("lastModified", "0"));
+			}
+			this.lastChange = this.file.lastModified();
+			return true;
+		} catch (Exception ex) {
+			LOGGER.log(Level.WARNING, "Failed to read " + this.file, ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Fetches the targets if they changed since the last fetch
+	 * @return true if new targets were fetched
+	 */
+	public synchronized boolean refresh() throws IOException {
+		long start = System.currentTimeMillis();
+		this.lastCheck = start;
+		try {
+			URLConnection connection = new URL(this.url).openConnection();
+			connection.setConnectTimeout(CONNECT_TIMEOUT);
+			connection.setReadTimeout(READ_TIMEOUT);
+			if (this.targets != null) {
+				if (this.etag != null) {
+					connection.setRequestProperty("If-None-Match", this.etag);
+				}
+				if (this.lastModified != 0) {
+					connection.setIfModifiedSince(this.lastModified);
+				}
+			}
+			connection.connect();
+
+			if (connection instanceof HttpURLConnection) {
+				int status = ((HttpURLConnection)connection).getResponseCode();
+				if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					this.fetchTime = System.currentTimeMillis() - start;
+					this.lastResult = "not modified";
+					return false;
+				}
+				if (status != HttpURLConnection.HTTP_OK) {
+					throw new IOException("Server answered " + status + " for " + this.url);
+				}
+			}
+			this.fetchTime = System.currentTimeMillis() - start;
+
+			// parse while downloading, keep the copy only if it could be parsed
+			long parseStart = System.currentTimeMillis();
+			File tmp = new File(this.file.getPath() + ".tmp");
+			this.file.getParentFile().mkdirs();
+			OutputStream copy = new FileOutputStream(tmp);
+			List<Map<String, List<String>>> parsed;
+			try {
+				InputStream in = new TeeInputStream(new BufferedInputStream(connection.getInputStream()), copy, true);
+				try {
+					parsed = parse(in);
+					// snakeyaml may stop before the end of the stream
+					byte[] buf = new byte[8192];
+					while (in.read(buf) != -1) {
+						// copied by the tee
+					}
+				} finally {
+					in.close();
+				}
+			} catch (IOException ex) {
+				copy.close();
+				tmp.delete();
+				throw ex;
+			} catch (RuntimeException ex) {
+				copy.close();
+				tmp.delete();
+				throw new IOException("Invalid targets at " + this.url + ": " + ex.getMessage(), ex);
+			}
+			this.parseTime = System.currentTimeMillis() - parseStart;
+
+			if (!tmp.renameTo(this.file)) {
+				this.file.delete();
+				if (!tmp.renameTo(this.file)) {
+					LOGGER.log(Level.WARNING, "Failed to replace " + this.file);
+				}
+			}
+			this.targets = parsed;
+			this.etag = connection.getHeaderField("ETag");
+			this.lastModified = connection.getLastModified();
+			this.lastChange = System.currentTimeMillis();
+			saveInfo();
+			this.lastResult = "updated";
+			return true;
+		} catch (IOException ex) {
+			this.lastResult = ex.toString();
+			throw ex;
+		}
+	}
+
+	private void saveInfo() {
+		Properties info = new Properties();
+		info.setProperty("url", this.url);
+		if (this.etag != null) {
+			info.setProperty("etag", this.etag);
+		}
+		info.setProperty("lastModified", Long.toString(this.lastModified));
+		try {
+			OutputStream out = new FileOutputStream(this.infoFile);
+			try {
+				info.store(out, null);
+			} finally {
+				out.close();
+			}
+		} catch (IOException ex) {
+			LOGGER.log(Level.WARNING, "Failed to write " + this.infoFile, ex);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, List<String>>> parse(InputStream in) {
+		Object data = new Yaml().load(in);
+		if (data == null) {
+			return Collections.emptyList();
+		}
+		if (!(data instanceof List)) {
+			throw new IllegalArgumentException("Expected a list of ROS releases");
+		}
+		for (Object item : (List<?>)data) {
+			if (!(item instanceof Map)) {
+				throw new IllegalArgumentException("Expected a ROS release, found " + item);
+			}
+		}
+		return (List<Map<String, List<String>>>)data;
+	}
+
+	/**
+	 * Time of the last check for changes, null if there was none yet
+	 */
+	public Date getLastCheck() {
+		return this.lastCheck == 0 ? null : new Date(this.lastCheck);
+	}
+
+	/**
+	 * Time the current targets were fetched, null if there are none
+	 */
+	public Date getLastChange() {
+		return this.lastChange == 0 ? null : new Date(this.lastChange);
+	}
+
+	/**
+	 * Milliseconds until the server answered the last request
+	 */
+	public long getFetchTime() {
+		return this.fetchTime;
+	}
+
+	/**
+	 * Milliseconds it took to download and parse the last changed targets
+	 */
+	public long getParseTime() {
+		return this.parseTime;
+	}
+
+	public String getSummary() {
+		if (this.lastCheck == 0) {
+			return this.targets == null ? "-" : "local copy of " + getLastChange();
+		}
+		return getLastCheck() + ": " + this.lastResult + " (fetch " + this.fetchTime + "ms, parse " + this.parseTime
+				+ "ms, last change " + getLastChange() + ")";
+	}
+}
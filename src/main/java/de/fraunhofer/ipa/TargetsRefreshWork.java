@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Checks the targets.yaml files for changes in the background, so that saving the
+ * global configuration and starting Jenkins never wait for its download.
+ * Runs shortly after startup, every
+ * <tt>de.fraunhofer.ipa.TargetsRefreshWork.interval</tt> minutes (15 by default)
+ * and right after the global configuration was saved.
+ */
+@Extension
+public class TargetsRefreshWork extends AsyncPeriodicWork {
+
+	private static final long INTERVAL = TimeUnit.MINUTES.toMillis(Integer.getInteger(TargetsRefreshWork.class.getName() + ".interval", 15));
+
+	public TargetsRefreshWork() {
+		super("Targets refresh");
+	}
+
+	@Override
+	public long getRecurrencePeriod() {
+		return INTERVAL;
+	}
+
+	@Override
+	public long getInitialDelay() {
+		return TimeUnit.SECONDS.toMillis(10);
+	}
+
+	@Override
+	protected void execute(TaskListener listener) throws IOException, InterruptedException {
+		CobPipelineProperty.DescriptorImpl desc = Jenkins.getInstance().getDescriptorByType(CobPipelineProperty.DescriptorImpl.class);
+		try {
+			desc.refreshTargets();
+		} finally {
+			for (TargetSource source : desc.getTargetSources()) {
+				listener.getLogger().println(source.getUrl() + ": " + source.getSummary());
+			}
+		}
+	}
+
+	/**
+	 * Starts a refresh unless one is already running
+	 */
+	public void refreshNow() {
+		doRun();
+	}
+}
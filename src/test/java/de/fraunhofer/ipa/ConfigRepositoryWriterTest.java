@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the batching of the {@link ConfigRepositoryWriter} against a local
+ * bare repository as remote.
+ */
+public class ConfigRepositoryWriterTest {
+
+	private final List<File> folders = new ArrayList<File>();
+
+	private final List<ConfigRepositoryWriter> writers = new ArrayList<ConfigRepositoryWriter>();
+
+	@After
+	public void cleanUp() throws IOException {
+		for (ConfigRepositoryWriter writer : writers) {
+			writer.shutdown();
+		}
+		for (File folder : folders) {
+			FileUtils.deleteDirectory(folder);
+		}
+	}
+
+	@Test
+	public void batchesUsersInOneCommit() throws Exception {
+		File remote = createRemote();
+		final ConfigRepositoryWriter writer = createWriter(remote, 500, 30000);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Boolean> first = executor.submit(write(writer, "first/pipeline_config.yaml", "first"));
+			Future<Boolean> second = executor.submit(write(writer, "second/pipeline_config.yaml", "second"));
+			assertTrue(first.get());
+			assertTrue(second.get());
+		} finally {
+			executor.shutdown();
+		}
+
+		// one commit more than the initial one, so both were pushed together
+		List<RevCommit> commits = log(remote);
+		assertEquals(2, commits.size());
+		assertTrue(commits.get(0).getFullMessage().contains("first"));
+		assertTrue(commits.get(0).getFullMessage().contains("second"));
+
+		File clone = cloneRemote(remote);
+		assertEquals("first", FileUtils.readFileToString(new File(clone, "first/pipeline_config.yaml")));
+		assertEquals("second", FileUtils.readFileToString(new File(clone, "second/pipeline_config.yaml")));
+	}
+
+	@Test
+	public void untrackedFileIsNoChange() throws Exception {
+		File remote = createRemote();
+		ConfigRepositoryWriter writer = createWriter(remote, 0, 30000);
+
+		assertTrue(writer.write("first/pipeline_config.yaml", "first".getBytes(), "first"));
+		FileUtils.writeStringToFile(new File(writer.getFolder(), "stray.txt"), "stray");
+		assertTrue(writer.write("first/pipeline_config.yaml", "first".getBytes(), "first"));
+
+		assertEquals(2, log(remote).size());
+	}
+
+	@Test
+	public void rejectedPushIsRetriedWithNextBatch() throws Exception {
+		File remote = createRemote();
+		ConfigRepositoryWriter writer = createWriter(remote, 0, 30000);
+
+		// a locked branch makes the remote reject the update
+		File lock = new File(remote, "refs/heads/master.lock");
+		FileUtils.writeStringToFile(lock, "");
+		assertFalse(writer.write("first/pipeline_config.yaml", "first".getBytes(), "first"));
+		assertEquals(1, log(remote).size());
+
+		assertTrue(lock.delete());
+		assertTrue(writer.write("second/pipeline_config.yaml", "second".getBytes(), "second"));
+		assertEquals(3, log(remote).size());
+	}
+
+	@Test
+	public void batchNotPushedInTimeFails() throws Exception {
+		File remote = createRemote();
+		ConfigRepositoryWriter writer = createWriter(remote, 5000, 100);
+
+		assertFalse(writer.write("first/pipeline_config.yaml", "first".getBytes(), "first"));
+	}
+
+	private Callable<Boolean> write(final ConfigRepositoryWriter writer, final String path, final String user) {
+		return new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				return writer.write(path, user.getBytes(), user);
+			}
+		};
+	}
+
+	private ConfigRepositoryWriter createWriter(File remote, long window, long timeout) throws IOException {
+		ConfigRepositoryWriter writer = new ConfigRepositoryWriter(new File(createFolder(), "jenkins_config"), remote.getAbsolutePath(), window, timeout);
+		writers.add(writer);
+		return writer;
+	}
+
+	/**
+	 * Creates a bare repository with an initial commit on master
+	 */
+	private File createRemote() throws Exception {
+		File remote = createFolder();
+		Git.init().setBare(true).setDirectory(remote).call().getRepository().close();
+
+		File seed = createFolder();
+		Git git = Git.init().setDirectory(seed).call();
+		try {
+			FileUtils.writeStringToFile(new File(seed, "README"), "jenkins_config");
+			git.add().addFilepattern("README").call();
+			git.commit().setMessage("Initial commit").call();
+			git.push().setRemote(remote.getAbsolutePath()).setRefSpecs(new RefSpec("refs/heads/master:refs/heads/master")).call();
+		} finally {
+			git.getRepository().close();
+		}
+		return remote;
+	}
+
+	private File cloneRemote(File remote) throws Exception {
+		File clone = createFolder();
+		FileUtils.deleteDirectory(clone);
+		Git.cloneRepository().setURI(remote.getAbsolutePath()).setDirectory(clone).call().getRepository().close();
+		return clone;
+	}
+
+	private List<RevCommit> log(File remote) throws Exception {
+		Git git = new Git(new FileRepository(remote));
+		try {
+			List<RevCommit> commits = new ArrayList<RevCommit>();
+			for (Iterator<RevCommit> it = git.log().call().iterator(); it.hasNext();) {
+				commits.add(it.next());
+			}
+			return commits;
+		} finally {
+			git.getRepository().close();
+		}
+	}
+
+	private File createFolder() throws IOException {
+		File folder = File.createTempFile("cob-pipeline", "");
+		folder.delete();
+		folder.mkdirs();
+		folders.add(folder);
+		return folder;
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the token bucket, the priority reserve and the backoff of the
+ * {@link GithubScheduler} against a fake clock.
+ */
+public class GithubSchedulerTest {
+
+	/**
+	 * Scheduler whose clock only advances while it waits or when a test moves it
+	 */
+	private static class FakeClockScheduler extends GithubScheduler {
+		private long now;
+
+		private long waited;
+
+		public FakeClockScheduler(int burst, int requestsPerSecond, int backgroundReserve, long maxWait) {
+			super(burst, requestsPerSecond, backgroundReserve, maxWait);
+		}
+
+		@Override
+		long currentTimeMillis() {
+			return this.now;
+		}
+
+		@Override
+		void await(long millis) {
+			this.now += millis;
+			this.waited += millis;
+		}
+	}
+
+	@After
+	public void resetPriority() {
+		GithubScheduler.setPriority(GithubScheduler.Priority.INTERACTIVE);
+	}
+
+	@Test
+	public void burstIsThrottled() throws Exception {
+		FakeClockScheduler scheduler = new FakeClockScheduler(3, 1, 0, 0);
+		for (int i = 0; i < 3; i++) {
+			scheduler.acquire();
+		}
+		try {
+			scheduler.acquire();
+			fail("request beyond the burst passed");
+		} catch (GithubScheduler.ThrottledException expected) {
+		}
+
+		scheduler.now += 1000;
+		scheduler.acquire();
+	}
+
+	@Test
+	public void waitsForNextToken() throws Exception {
+		FakeClockScheduler scheduler = new FakeClockScheduler(1, 2, 0, 5000);
+		scheduler.acquire();
+		scheduler.acquire();
+		assertEquals(500, scheduler.waited);
+	}
+
+	@Test
+	public void waitEndsAtDeadline() throws Exception {
+		FakeClockScheduler scheduler = new FakeClockScheduler(1, 1, 0, 200);
+		scheduler.acquire();
+		try {
+			scheduler.acquire();
+			fail("request passed without a token");
+		} catch (GithubScheduler.ThrottledException expected) {
+		}
+		assertEquals(200, scheduler.waited);
+	}
+
+	@Test
+	public void backgroundKeepsReserve() throws Exception {
+		FakeClockScheduler scheduler = new FakeClockScheduler(10, 5, 500, 0);
+		// reserve is limited to a quarter of the quota
+		scheduler.update(100, 25, 60000);
+
+		GithubScheduler.setPriority(GithubScheduler.Priority.BACKGROUND);
+		try {
+			scheduler.acquire();
+			fail("background request used the reserve");
+		} catch (GithubScheduler.RateLimitExceededException expected) {
+			assertEquals(60000, expected.getReset());
+		}
+
+		GithubScheduler.setPriority(GithubScheduler.Priority.INTERACTIVE);
+		scheduler.acquire();
+		assertEquals(24, scheduler.getRemaining());
+	}
+
+	@Test
+	public void exceededQuotaFailsUntilReset() throws Exception {
+		FakeClockScheduler scheduler = new FakeClockScheduler(10, 5, 0, 0);
+		scheduler.update(100, 1, 60000);
+		scheduler.acquire();
+		try {
+			scheduler.acquire();
+			fail("request passed without quota");
+		} catch (GithubScheduler.RateLimitExceededException expected) {
+			assertEquals(60000, expected.getReset());
+		}
+
+		scheduler.now = 60000;
+		scheduler.acquire();
+	}
+
+	@Test
+	public void exhaustedKeepsReportedReset() throws Exception {
+		FakeClockScheduler scheduler = new FakeClockScheduler(10, 5, 0, 0);
+		scheduler.update(100, 0, 30000);
+		scheduler.exhausted();
+		assertEquals(30000, scheduler.getReset());
+	}
+
+	@Test
+	public void exhaustedBacksOffWithoutReset() throws Exception {
+		FakeClockScheduler scheduler = new FakeClockScheduler(10, 5, 0, 0);
+		long minute = TimeUnit.MINUTES.toMillis(1);
+
+		scheduler.exhausted();
+		assertEquals(minute, scheduler.getReset());
+		try {
+			scheduler.acquire();
+			fail("request passed during backoff");
+		} catch (GithubScheduler.RateLimitExceededException expected) {
+			assertEquals(minute, expected.getReset());
+		}
+
+		// refused again after the backoff, which doubles it
+		scheduler.now = minute;
+		scheduler.acquire();
+		scheduler.exhausted();
+		assertEquals(3*minute, scheduler.getReset());
+
+		// a reported quota ends the backoff
+		scheduler.update(5000, 4999, 10*minute);
+		scheduler.now = 10*minute;
+		scheduler.acquire();
+		scheduler.exhausted();
+		assertEquals(11*minute, scheduler.getReset());
+	}
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2012
+ * Fraunhofer Institute for Manufacturing Engineering
+ * and Automation (IPA)
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * - Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the
+ * distribution.
+ * - Neither the name of the Fraunhofer Institute for Manufacturing
+ * Engineering and Automation (IPA) nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify
+ * it under the terms of the GNU Lesser General Public License LGPL as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License LGPL for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License LGPL along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.fraunhofer.ipa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.RequestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link RateLimitedGitHubClient} against a local HTTP server
+ * which answers like GitHub with rate limit headers.
+ */
+public class RateLimitedGitHubClientTest {
+
+	private static final String URL_PROPERTY = RateLimitedGitHubClient.class.getName() + ".url";
+
+	private static final AtomicInteger LOGINS = new AtomicInteger();
+
+	private HttpServer server;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * answer of the server to the next requests
+	 */
+	private volatile int status;
+	private volatile String body;
+	private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+	/**
+	 * ETag the server answers with 304 when it is sent as If-None-Match
+	 */
+	private volatile String etag;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				synchronized (headers) {
+					for (Map.Entry<String, String> header : headers.entrySet()) {
+						exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+					}
+				}
+				String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+				if (etag != null) {
+					exchange.getResponseHeaders().add("ETag", etag);
+					if (etag.equals(ifNoneMatch)) {
+						exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+						exchange.close();
+						return;
+					}
+				}
+				byte[] content = body.getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type", "application/json");
+				exchange.sendResponseHeaders(status, content.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(content);
+				out.close();
+			}
+		});
+		server.start();
+		System.setProperty(URL_PROPERTY, "http://localhost:" + server.getAddress().getPort());
+
+		answer(HttpURLConnection.HTTP_OK, "{\"name\":\"repo\"}");
+	}
+
+	@After
+	public void stopServer() {
+		System.clearProperty(URL_PROPERTY);
+		server.stop(0);
+	}
+
+	private void answer(int status, String body) {
+		this.status = status;
+		this.body = body;
+	}
+
+	private void header(String name, String value) {
+		synchronized (headers) {
+			headers.put(name, value);
+		}
+	}
+
+	/**
+	 * Returns a client with a login of its own, so every test has a fresh scheduler
+	 */
+	private RateLimitedGitHubClient createClient() {
+		RateLimitedGitHubClient client = RateLimitedGitHubClient.create();
+		client.setCredentials("rate-limit-test-" + LOGINS.incrementAndGet(), "secret");
+		return client;
+	}
+
+	private static GitHubRequest request() {
+		GitHubRequest request = new GitHubRequest();
+		request.setUri("/repos/owner/repo");
+		request.setType(Repository.class);
+		return request;
+	}
+
+	@Test
+	public void reportsRateLimitHeaders() throws Exception {
+		long reset = System.currentTimeMillis() / 1000 + 3600;
+		header("X-RateLimit-Limit", "5000");
+		header("X-RateLimit-Remaining", "4321");
+		header("X-RateLimit-Reset", Long.toString(reset));
+
+		RateLimitedGitHubClient client = createClient();
+		GitHubResponse response = client.get(request());
+		assertEquals("repo", ((Repository)response.getBody()).getName());
+
+		GithubScheduler scheduler = GithubScheduler.forLogin(client.getUser());
+		assertEquals(5000, scheduler.getLimit());
+		assertEquals(4321, scheduler.getRemaining());
+		assertEquals(reset * 1000, scheduler.getReset());
+	}
+
+	@Test
+	public void exhaustedQuotaKeepsReportedReset() throws Exception {
+		long reset = System.currentTimeMillis() / 1000 + 3600;
+		header("X-RateLimit-Limit", "5000");
+		header("X-RateLimit-Remaining", "0");
+		header("X-RateLimit-Reset", Long.toString(reset));
+		answer(HttpURLConnection.HTTP_FORBIDDEN, "{\"message\":\"API rate limit exceeded\"}");
+
+		RateLimitedGitHubClient client = createClient();
+		try {
+			client.get(request());
+			fail("refused request succeeded");
+		} catch (RequestException expected) {
+			assertEquals(HttpURLConnection.HTTP_FORBIDDEN, expected.getStatus());
+		}
+		assertEquals(1, requests.get());
+
+		// further requests fail without asking GitHub
+		try {
+			client.get(request());
+			fail("request passed without quota");
+		} catch (GithubScheduler.RateLimitExceededException expected) {
+			assertEquals(reset * 1000, expected.getReset());
+		}
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void exhaustedQuotaWithoutResetBacksOff() throws Exception {
+		header("X-RateLimit-Remaining", "0");
+		answer(HttpURLConnection.HTTP_FORBIDDEN, "{\"message\":\"API rate limit exceeded\"}");
+
+		RateLimitedGitHubClient client = createClient();
+		long before = System.currentTimeMillis();
+		try {
+			client.get(request());
+			fail("refused request succeeded");
+		} catch (RequestException expected) {
+		}
+
+		long reset = GithubScheduler.forLogin(client.getUser()).getReset();
+		assertTrue("backoff of a minute expected, reset in " + (reset - before) + "ms",
+				reset >= before + TimeUnit.MINUTES.toMillis(1) && reset <= System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+		try {
+			client.get(request());
+			fail("request passed during backoff");
+		} catch (GithubScheduler.RateLimitExceededException expected) {
+		}
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void forbiddenWithQuotaLeftIsNoRateLimit() throws Exception {
+		long reset = System.currentTimeMillis() / 1000 + 3600;
+		header("X-RateLimit-Limit", "5000");
+		header("X-RateLimit-Remaining", "4000");
+		header("X-RateLimit-Reset", Long.toString(reset));
+		answer(HttpURLConnection.HTTP_FORBIDDEN, "{\"message\":\"Forbidden\"}");
+
+		RateLimitedGitHubClient client = createClient();
+		for (int i = 0; i < 2; i++) {
+			try {
+				client.get(request());
+				fail("forbidden request succeeded");
+			} catch (RequestException expected) {
+				assertEquals(HttpURLConnection.HTTP_FORBIDDEN, expected.getStatus());
+			}
+		}
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void unchangedResourceIsNull() throws Exception {
+		etag = "\"abc\"";
+		RateLimitedGitHubClient client = createClient();
+
+		GitHubResponse response = client.getConditional(request(), null);
+		assertNotNull(response);
+		assertEquals(etag, client.getLastEtag());
+
+		assertNull(client.getConditional(request(), etag));
+		assertNotNull(client.getConditional(request(), "\"outdated\""));
+		assertEquals(3, requests.get());
+	}
+}